@@ -0,0 +1,71 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#ifndef IIWA_DRIVER_CLOCK_SYNC_H
+#define IIWA_DRIVER_CLOCK_SYNC_H
+
+#include <cstddef>
+#include <cstdint>
+#include <vector>
+
+namespace iiwa_ros {
+    /// Estimates the offset and drift of the robot application's clock (FRIClock) against the local clock, PTP-style:
+    /// t1 request sent (local), t2 request received and t3 reply sent (controller), t4 reply received (local).
+    /// The offset is fitted over a sliding window of exchanges, keeping those with the lowest round trips.
+    class ClockSync {
+    public:
+        struct Estimate {
+            bool valid = false;
+            int64_t reference = 0; // local time the offset refers to [ns]
+            double offset = 0.; // controller minus local clock at reference [ns]
+            double drift = 0.; // change of the offset per local time [ns/ns]
+            double round_trip = 0.; // lowest round trip in the window [ns]
+
+            /// Converts a controller time to the local clock [ns].
+            int64_t to_local(int64_t controller_time) const;
+        };
+
+        explicit ClockSync(size_t window = 300);
+
+        /// Adds an exchange. Returns false if it is invalid (negative round trip).
+        bool add(int64_t t1, int64_t t2, int64_t t3, int64_t t4);
+        const Estimate& estimate() const { return _estimate; }
+        void reset();
+
+    protected:
+        struct Exchange {
+            int64_t local; // midpoint of t1 and t4
+            double offset;
+            double round_trip;
+        };
+
+        void _update();
+
+        std::vector<Exchange> _exchanges;
+        size_t _next;
+        Estimate _estimate;
+    };
+} // namespace iiwa_ros
+
+#endif
@@ -0,0 +1,60 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#ifndef IIWA_DRIVER_COMMAND_CHANNEL_H
+#define IIWA_DRIVER_COMMAND_CHANNEL_H
+
+#include <string>
+
+namespace iiwa_ros {
+    /// Client of the line-based TCP command server of the robot application (FRICommandServer):
+    /// each command line is answered by one line, "ok [<text>]" or "error <text>".
+    /// Not real-time safe: use it outside of the control loop.
+    class CommandChannel {
+    public:
+        CommandChannel();
+        ~CommandChannel();
+
+        void set_server(const std::string& host, int port, double timeout);
+        bool enabled() const;
+
+        /// Sends a command and waits for its reply. (Re)connects if needed.
+        /// Returns false (with the reason in reply) if the robot cannot be reached.
+        bool send(const std::string& command, std::string& reply);
+
+        void close();
+
+    protected:
+        bool _connect(std::string& error);
+        bool _read_line(std::string& line, std::string& error);
+
+        std::string _host;
+        int _port;
+        double _timeout; // in s
+        int _socket;
+        std::string _buffer;
+    };
+} // namespace iiwa_ros
+
+#endif
@@ -0,0 +1,75 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#ifndef IIWA_DRIVER_CONTROLLER_OUTPUTS_H
+#define IIWA_DRIVER_CONTROLLER_OUTPUTS_H
+
+#include <array>
+#include <cstdint>
+#include <string>
+
+namespace iiwa_ros {
+    /// Receiver of the values the robot application computes on the controller (FRIAdditionalOutputs):
+    /// one UDP datagram per FRI send period. The same socket exchanges the clock synchronization
+    /// requests and replies with the robot application (FRIClockSync). Not real-time safe: receive on a separate thread.
+    class ControllerOutputs {
+    public:
+        enum class Datagram { NONE, SAMPLE, SYNC_REPLY };
+
+        struct Sample {
+            uint64_t sequence = 0;
+            int64_t controller_time = 0; // of the sample [ns since the epoch, controller clock]
+            std::array<double, 6> wrench{}; // force [N] and torque [Nm] at the motion frame
+            std::array<double, 6> flange{}; // x, y, z [m] and A, B, C [rad] in the robot base
+            uint64_t contact_count = 0; // contacts the robot application reacted to (FRIContactGuard)
+            bool contact_holding = false; // the robot holds after a contact until the overlay is resumed
+        };
+
+        ControllerOutputs();
+        ~ControllerOutputs();
+
+        struct SyncReply {
+            uint64_t sequence = 0;
+            int64_t t1 = 0; // request sent [ns, local clock]
+            int64_t t2 = 0; // request received [ns, controller clock]
+            int64_t t3 = 0; // reply sent [ns, controller clock]
+        };
+
+        bool open(int port, std::string& error);
+        bool is_open() const;
+
+        /// Sends a clock synchronization request, sent at t1 (local clock, in ns), to the robot application.
+        bool send_sync_request(const std::string& host, int port, uint64_t sequence, int64_t t1);
+
+        /// Waits up to timeout (in s) for a datagram. Returns NONE on timeout or on an invalid datagram.
+        Datagram receive(Sample& sample, SyncReply& reply, double timeout);
+
+        void close();
+
+    protected:
+        int _socket;
+    };
+} // namespace iiwa_ros
+
+#endif
@@ -28,10 +28,22 @@
 // ROS Headers
 #include <ros/ros.h>
 #include <std_msgs/Bool.h>
+#include <std_msgs/String.h>
+#include <geometry_msgs/Pose.h>
+#include <geometry_msgs/Wrench.h>
+#include <trajectory_msgs/JointTrajectory.h>
 
+#include <array>
+#include <atomic>
+#include <mutex>
+#include <thread>
+
+#include <realtime_tools/realtime_buffer.h>
 #include <realtime_tools/realtime_publisher.h>
 
 #include <iiwa_driver/AdditionalOutputs.h>
+#include <iiwa_driver/GripperCommand.h>
+#include <iiwa_driver/GripperState.h>
 #include <std_msgs/Float64MultiArray.h>
 #include <std_msgs/Bool.h>
 
@@ -49,6 +61,19 @@
 #include <kuka/fri/LBRState.h>
 #include <kuka/fri/UdpConnection.h>
 
+// The Cartesian pose overlay needs the FRI client SDK 2.x (CMake option FRI_CARTESIAN_POSE),
+// where the joint position mode is named JOINT_POSITION
+#ifdef IIWA_FRI_CARTESIAN_POSE
+#define IIWA_FRI_POSITION kuka::fri::JOINT_POSITION
+#else
+#define IIWA_FRI_POSITION kuka::fri::POSITION
+#endif
+
+#include <iiwa_driver/command_channel.h>
+#include <iiwa_driver/clock_sync.h>
+#include <iiwa_driver/controller_outputs.h>
+#include <iiwa_driver/setpoint_interpolator.h>
+
 namespace controller_manager {
     class ControllerManager;
 }
@@ -86,16 +111,70 @@ namespace iiwa_ros {
     protected:
         void _init();
         void _ctrl_loop();
+        void _fri_loop();
+        void _command_loop();
         void _load_params();
-        void _read(ros::Duration elapsed_time);
+        bool _read(ros::Duration elapsed_time);
         void _write(ros::Duration elapsed_time);
+        bool _read_session();
+        void _measure(double elapsed, std::vector<double>& position, std::vector<double>& velocity, std::vector<double>& effort);
+        bool _update_command_mode();
+        bool _hold_commands();
+        bool _contact_reset();
+        void _enforce_limits(ros::Duration elapsed_time);
+        void _write_command(const std::vector<double>& position_command, const std::vector<double>& effort_command);
+        static const char* _command_mode_name(kuka::fri::EClientCommandMode mode);
+        static const char* _session_state_name(kuka::fri::ESessionState state);
         bool _init_fri();
         bool _connect_fri();
         void _disconnect_fri();
         bool _read_fri(kuka::fri::ESessionState& current_state);
         bool _write_fri();
         void _publish();
-        void _on_fri_state_change(kuka::fri::ESessionState old_state, kuka::fri::ESessionState current_state) {}
+        void _on_fri_state_change(kuka::fri::ESessionState old_state, kuka::fri::ESessionState current_state);
+        void _on_fri_send_period_change(unsigned int send_period);
+        bool _send_command(const std::string& command, std::string& reply);
+        void _command_callback(const std_msgs::String::ConstPtr& msg);
+        void _trajectory_callback(const trajectory_msgs::JointTrajectory::ConstPtr& msg);
+        void _wrench_callback(const geometry_msgs::Wrench::ConstPtr& msg);
+        void _pose_callback(const geometry_msgs::Pose::ConstPtr& msg);
+        void _gripper_callback(const iiwa_driver::GripperCommand::ConstPtr& msg);
+        void _check_gripper_io();
+        void _receive_outputs();
+
+        struct WrenchCommand {
+            std::array<double, 6> wrench{}; // force and torque, in the frame of the overlay motion
+            ros::Time stamp; // time of reception
+        };
+
+        struct PoseCommand {
+            std::array<double, 7> pose{}; // of the overlay motion frame in the robot base, as x, y, z [mm], qw, qx, qy, qz
+            ros::Time stamp; // time of reception
+        };
+
+        struct CartesianOutputs {
+            ControllerOutputs::Sample sample;
+            ros::Time stamp; // time of reception, zero before the first one
+        };
+
+        struct FriSample {
+            std::vector<double> position, velocity, effort;
+            kuka::fri::EClientCommandMode command_mode = kuka::fri::NO_COMMAND_MODE;
+            ros::Time stamp; // of the FRI cycle, zero before the first one
+        };
+
+        struct FriTarget {
+            std::vector<double> position, effort;
+            kuka::fri::EClientCommandMode command_mode = kuka::fri::NO_COMMAND_MODE;
+            ros::Time sample_stamp; // of the FRI cycle the controllers updated from
+            ros::Time stamp; // of the update, zero before the first one
+        };
+
+        struct GripperCommand {
+            bool close = false;
+            double position = -1.; // in [0, 1], negative: not commanded
+            bool received = false; // the outputs are left untouched until the first command
+        };
 
         // External torque and commanding status publishers
         realtime_tools::RealtimePublisher<iiwa_driver::AdditionalOutputs> _additional_pub;
@@ -119,13 +198,30 @@ namespace iiwa_ros {
         int _joint_mode; // position, velocity, or effort
         std::vector<std::string> _joint_names;
         std::vector<int> _joint_types;
-        std::vector<double> _joint_position, _joint_position_prev;
+        std::vector<double> _joint_position;
         std::vector<double> _joint_velocity;
         std::vector<double> _joint_effort;
         std::vector<double> _joint_position_command;
         std::vector<double> _joint_velocity_command;
         std::vector<double> _joint_effort_command;
 
+        // Wrench command (wrench overlay), streamed on a topic
+        realtime_tools::RealtimeBuffer<WrenchCommand> _wrench_command;
+        ros::Subscriber _wrench_sub;
+        double _wrench_timeout;
+
+        // Pose command (Cartesian pose overlay), streamed on a topic; the controller solves the inverse kinematics
+        realtime_tools::RealtimeBuffer<PoseCommand> _pose_command;
+        ros::Subscriber _pose_sub;
+
+        // Gripper I/O of the robot application, in the FRI messages ("<group>.<signal>", empty: unused)
+        realtime_tools::RealtimeBuffer<GripperCommand> _gripper_command;
+        realtime_tools::RealtimePublisher<iiwa_driver::GripperState> _gripper_pub;
+        ros::Subscriber _gripper_sub;
+        std::string _gripper_close_io, _gripper_position_io, _gripper_closed_io, _gripper_actual_position_io;
+        double _gripper_position_max;
+        bool _gripper_enabled, _gripper_io_checked;
+
         // Controller manager
         std::shared_ptr<controller_manager::ControllerManager> _controller_manager;
 
@@ -136,10 +232,53 @@ namespace iiwa_ros {
         kuka::fri::DummyCommand _robot_command; //!< wrapper class for the FRI command message
         int _message_size;
         bool _idle, _commanding;
+        unsigned int _fri_send_period; // in ms, as reported by the robot
+        kuka::fri::EClientCommandMode _command_mode; // of the overlay, may change on a running session
+        ros::Time _command_mode_since; // commands received before are not used
 
         int _port;
         std::string _remote_host;
 
+        // Controllers at a lower rate than the FRI cycles (command_freq > 0): the FRI thread answers every
+        // cycle from setpoints interpolated between the targets of the controllers
+        SetpointInterpolator _interpolator;
+        SetpointInterpolator::Limits _interpolation_limits;
+        double _max_extrapolation;
+        std::mutex _exchange_mutex; // only tried by the FRI thread
+        FriSample _fri_sample;
+        FriTarget _fri_target;
+        std::atomic<bool> _fri_running;
+        double _command_age; // in s, since the last target of the controllers (negative: none)
+        uint64_t _extrapolated_cycles;
+        double _command_freq;
+
+        // Command side channel to the robot application (not real-time)
+        CommandChannel _command_channel;
+        std::mutex _command_mutex;
+        ros::Subscriber _command_sub;
+        ros::Publisher _command_reply_pub;
+        ros::Subscriber _trajectory_sub; // uploaded in one command and executed on the controller
+        int _command_port;
+        double _command_timeout;
+
+        // Values computed on the controller by the robot application, received next to FRI
+        ControllerOutputs _controller_outputs;
+        realtime_tools::RealtimeBuffer<CartesianOutputs> _cartesian_outputs;
+        std::thread _outputs_thread;
+        std::atomic<bool> _outputs_running;
+        int _outputs_port;
+
+        // Contact reaction of the robot application (FRIContactGuard), pushed with the outputs: while
+        // the robot holds, no commands are sent and the controllers restart from the measured state
+        std::atomic<uint64_t> _contact_count;
+        std::atomic<bool> _contact_holding;
+        uint64_t _contact_count_seen; // by the controllers
+
+        // Clock of the robot application (FRIClock) relative to ROS time, synchronized on the outputs port
+        ClockSync _clock_sync;
+        realtime_tools::RealtimeBuffer<ClockSync::Estimate> _clock_estimate;
+        double _clock_sync_period;
+
         // ROS communication/timing related
         ros::NodeHandle _nh;
         std::string _robot_description;
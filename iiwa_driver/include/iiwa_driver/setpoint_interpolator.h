@@ -0,0 +1,75 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#ifndef IIWA_DRIVER_SETPOINT_INTERPOLATOR_H
+#define IIWA_DRIVER_SETPOINT_INTERPOLATOR_H
+
+#include <cstddef>
+#include <vector>
+
+namespace iiwa_ros {
+    /// Joint setpoints for every FRI cycle from targets commanded at a lower or irregular rate.
+    /// The setpoint tracks a reference moving linearly to each new target over one command period,
+    /// with the velocity of the last targets as feedforward; if no newer target arrives by then, the
+    /// reference is extrapolated with that velocity for at most max_extrapolation, and the setpoint
+    /// brakes to stop at its end (or within its braking distance, never moving back). The velocity,
+    /// acceleration and jerk of the setpoints are bounded.
+    class SetpointInterpolator {
+    public:
+        struct Limits {
+            double velocity = 1.5; // [rad/s]
+            double acceleration = 10.; // [rad/s^2]
+            double jerk = 500.; // [rad/s^3]
+        };
+
+        void configure(size_t joints, const Limits& limits, double command_period, double max_extrapolation);
+
+        /// Holds the position from time on (start, command mode switch), dropping the targets.
+        void reset(const std::vector<double>& position, double time);
+        /// A new target of the controllers, received at time [s].
+        void set_target(const std::vector<double>& target, double time);
+        /// Advances the setpoint by one cycle of dt to time [s].
+        const std::vector<double>& update(double time, double dt);
+
+        const std::vector<double>& setpoint() const { return _setpoint; }
+        bool initialized() const { return _initialized; }
+        /// Whether the last update was past the command period of the last target.
+        bool extrapolating() const { return _extrapolating; }
+
+    protected:
+        double _stopping_velocity(double distance) const;
+
+        Limits _limits;
+        double _command_period = 0.;
+        double _max_extrapolation = 0.;
+        bool _initialized = false;
+        bool _has_target = false;
+        bool _extrapolating = false;
+        double _target_time = 0.;
+        std::vector<double> _setpoint, _velocity, _acceleration;
+        std::vector<double> _target, _target_velocity;
+    };
+} // namespace iiwa_ros
+
+#endif
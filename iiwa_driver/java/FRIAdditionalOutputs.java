@@ -0,0 +1,179 @@
+package application;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.geometricModel.math.Vector;
+import com.kuka.roboticsAPI.sensorModel.ForceSensorData;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Streams values computed on the controller, where the robot model and the
+ * attached tool are known, to the FRI client every send period: the external
+ * force/torque at the motion frame (tool or flange), the flange pose in the
+ * robot base, and the contact state of the {@link FRIContactGuard}, so that
+ * the client learns of a contact within a send period.
+ *
+ * The FRI messages only carry joint values and registered I/O, so the values
+ * are sent as one UDP datagram per send period to the client of the session.
+ * The port has to be one of the ports open for applications on the KONI
+ * (30000 to 30010); the datagrams are sent from the same port on the
+ * controller, where the {@link FRIClockSync} answers the clock synchronization
+ * requests of the client. Every datagram carries the controller time of its
+ * sample, which the client converts to its own clock.
+ *
+ * Datagram layout (little endian, 136 bytes):
+ *
+ * <pre>
+ *   int32  magic 'FRIA', int32 version, int64 sequence number,
+ *   int64  time of the sample [ns since the epoch, {@link FRIClock}],
+ *   double force x, y, z [N], torque x, y, z [Nm] at the motion frame
+ *   double flange x, y, z [m], A, B, C [rad] in the robot base
+ *   int64  number of contacts the contact guard reacted to
+ *   int32  1 while the robot holds after a contact, else 0; int32 reserved
+ * </pre>
+ */
+public class FRIAdditionalOutputs extends FRIPeriodicTask
+{
+    private static final int MAGIC = 0x46524941; // 'FRIA'
+    private static final int VERSION = 3;
+    private static final int SIZE = 136;
+
+    private final LBR _lbr;
+    private final int _port;
+    private final ITaskLogger _logger;
+    private final ByteBuffer _buffer = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FRISessionSupervisor _supervisor;
+    private FRIConfiguration _friConfiguration;
+    private ObjectFrame _forceFrame;
+    private DatagramSocket _socket;
+    private DatagramPacket _packet;
+    private long _sequence;
+    private boolean _failed;
+
+    /**
+     * @param lbr
+     *            the robot
+     * @param port
+     *            the UDP port of the client; 0 disables the stream
+     * @param logger
+     *            logger
+     */
+    public FRIAdditionalOutputs(LBR lbr, int port, ITaskLogger logger)
+    {
+        super("FRIAdditionalOutputs");
+        _lbr = lbr;
+        _port = port;
+        _logger = logger;
+    }
+
+    public boolean isEnabled()
+    {
+        return _port > 0;
+    }
+
+    /**
+     * Starts streaming to the client of the session at its send period. Does
+     * nothing if the stream is disabled.
+     *
+     * @param supervisor
+     *            the supervisor of the session
+     * @param forceFrame
+     *            the frame the external force/torque is expressed in until
+     *            the overlay runs; then, the motion frame of the overlay is
+     *            used (it follows tool changes)
+     */
+    public synchronized void start(FRISessionSupervisor supervisor, ObjectFrame forceFrame)
+    {
+        if (!isEnabled() || isRunning())
+            return;
+
+        String host = supervisor.getConfiguration().getHostName();
+        try {
+            _socket = new DatagramSocket(_port);
+            _packet = new DatagramPacket(_buffer.array(), SIZE, new InetSocketAddress(host, _port));
+        }
+        catch (final IOException e) {
+            _logger.error("Cannot open the additional outputs stream: " + e.getLocalizedMessage());
+            finish();
+            return;
+        }
+
+        _supervisor = supervisor;
+        _friConfiguration = supervisor.getConfiguration();
+        _forceFrame = forceFrame;
+        _sequence = 0;
+        _failed = false;
+        new FRIClockSync(_socket, _logger).start();
+        _logger.info("Streaming additional outputs of " + forceFrame.getName() + " to " + host + ":" + _port);
+        startPeriodic(supervisor.getConfiguration().getSendPeriodMilliSec() * 1000000L);
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        // to the standby after a failover
+        FRIConfiguration friConfiguration = _supervisor.getConfiguration();
+        if (friConfiguration != _friConfiguration) {
+            _friConfiguration = friConfiguration;
+            _packet.setSocketAddress(new InetSocketAddress(friConfiguration.getHostName(), _port));
+        }
+
+        ObjectFrame forceFrame = _supervisor.getMotionFrame();
+        ForceSensorData forceTorque = _lbr.getExternalForceTorque(forceFrame != null ? forceFrame : _forceFrame);
+        Vector force = forceTorque.getForce();
+        Vector torque = forceTorque.getTorque();
+        Frame flange = _lbr.getCurrentCartesianPosition(_lbr.getFlange(), _lbr.getRootFrame());
+        FRIContactGuard contactGuard = _supervisor.getContactGuard();
+
+        _buffer.clear();
+        _buffer.putInt(MAGIC);
+        _buffer.putInt(VERSION);
+        _buffer.putLong(_sequence++);
+        _buffer.putLong(FRIClock.epochNanos(now));
+        _buffer.putDouble(force.getX());
+        _buffer.putDouble(force.getY());
+        _buffer.putDouble(force.getZ());
+        _buffer.putDouble(torque.getX());
+        _buffer.putDouble(torque.getY());
+        _buffer.putDouble(torque.getZ());
+        _buffer.putDouble(flange.getX() / 1000.);
+        _buffer.putDouble(flange.getY() / 1000.);
+        _buffer.putDouble(flange.getZ() / 1000.);
+        _buffer.putDouble(flange.getAlphaRad());
+        _buffer.putDouble(flange.getBetaRad());
+        _buffer.putDouble(flange.getGammaRad());
+        _buffer.putLong(contactGuard != null ? contactGuard.getContactCount() : 0);
+        _buffer.putInt(contactGuard != null && contactGuard.isHolding() ? 1 : 0);
+        _buffer.putInt(0);
+
+        try {
+            _socket.send(_packet);
+            _failed = false;
+        }
+        catch (final IOException e) {
+            // e.g. client not reachable yet: logged once per failure streak
+            if (!_failed)
+                _logger.warn("Additional outputs not sent: " + e.getLocalizedMessage());
+            _failed = true;
+        }
+    }
+
+    @Override
+    protected synchronized void finish()
+    {
+        if (_socket != null) {
+            _socket.close();
+            _socket = null;
+        }
+    }
+}
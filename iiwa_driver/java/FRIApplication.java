@@ -0,0 +1,345 @@
+package application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
+import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
+import com.kuka.roboticsAPI.controllerModel.Controller;
+import com.kuka.roboticsAPI.deviceModel.Device;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.IMotionControlMode;
+
+/**
+ * Core of the FRI applications: creates an FRI session and executes a
+ * PositionHold motion with FRI overlay, during which joint angles, joint
+ * torques or wrenches can be additionally commanded via FRI.
+ *
+ * The applications differ only in their {@link FRIApplicationConfig}: the
+ * entry points fill it in {@link #configure(FRIApplicationConfig)}. The
+ * control mode and impedance come from a start-up preset or, without one,
+ * from the configured dialogs.
+ *
+ * With {@link FRIApplicationConfig#setAllRobots(boolean)}, every LBR of the
+ * station gets its own FRI session, client, overlay and control mode; the
+ * overlays run on separate threads and are started together once the clients
+ * are connected.
+ */
+public abstract class FRIApplication extends RoboticsAPIApplication
+{
+    /**
+     * FRI session, overlay and monitoring of one LBR.
+     */
+    private class Robot implements Runnable
+    {
+        private final LBR _lbr;
+        private final String _label;
+        private final String _clientName;
+        private final String _standbyClientName;
+        private final int _port;
+        private final FRIChannelMonitor _channelMonitor;
+        private final FRILinkGuard _linkGuard;
+        private final FRITelemetryRecorder _telemetryRecorder;
+        private final FRIAdditionalOutputs _additionalOutputs;
+        private final FRICommandServer _commandServer;
+        private final FRIContactGuard _contactGuard;
+        private final FRIEnvelopeGuard _envelopeGuard;
+        private final FRITrajectoryExecutor _trajectoryExecutor;
+        private final FRIToolRegistry _tools;
+        private final FRIGripperIO _gripperIO;
+        private FRIPreset _preset;
+        private FRISessionSupervisor _supervisor;
+        private IMotionControlMode _ctrMode;
+        private Thread _thread;
+
+        private Robot(Controller controller, LBR lbr, int index, boolean multiRobot)
+        {
+            _lbr = lbr;
+            _label = multiRobot ? lbr.getName() + ": " : "";
+            _clientName = _config.getClientName(index);
+            _standbyClientName = _config.getStandbyClientName(index);
+            _port = _config.getFriPort() + index;
+            _channelMonitor = new FRIChannelMonitor(getLogger(), _config.getMonitorCapacity(), _config.getMonitorSummarySec(),
+                    robotFile(_config.getMonitorFile(), index, multiRobot));
+            _linkGuard = new FRILinkGuard(_config.getLinkPolicy(), getLogger());
+            _telemetryRecorder = new FRITelemetryRecorder(lbr, getLogger(), _config.getTelemetryCapacity(),
+                    robotFile(_config.getTelemetryFile(), index, multiRobot));
+            _additionalOutputs = new FRIAdditionalOutputs(lbr, _config.getOutputsPort() > 0 ? _config.getOutputsPort() + index : 0, getLogger());
+            _commandServer = new FRICommandServer(_config.getCommandPort() > 0 ? _config.getCommandPort() + index : 0, getLogger(), _clientName,
+                    _standbyClientName);
+            _contactGuard = new FRIContactGuard(lbr, _config.getContactMaxJointTorque(), _config.getContactMaxForce(), _config.getContactReaction(),
+                    _config.getContactImpedance(), getLogger());
+            _envelopeGuard = new FRIEnvelopeGuard(lbr, FRIEnvelope.resolve(_config.getEnvelopeFile()), getLogger());
+            _trajectoryExecutor = new FRITrajectoryExecutor(lbr, _config.getMaxJointVelocity(), getLogger());
+            _tools = new FRIToolRegistry(FRIApplication.this, lbr, _config.getToolTemplates());
+            String[] io = _config.getGripperIO();
+            _gripperIO = io == null ? null : new FRIGripperIO(controller, io[0], io[1], io[2], io[3], io[4], _config.getGripperPositionBits());
+        }
+
+        /**
+         * Starts a timed phase of this robot, named as the phases of its
+         * supervisor.
+         */
+        private FRIPhaseTimer.Phase startPhase(String name)
+        {
+            return _timer.start(_label.isEmpty() ? name : "[" + _lbr.getName() + "] " + name);
+        }
+
+        private FRIConfiguration createConfiguration(String clientName, ClientCommandMode mode)
+        {
+            FRIConfiguration friConfiguration = FRIConfiguration.createRemoteConfiguration(_lbr, clientName);
+            friConfiguration.setPortOnRemote(_port);
+            friConfiguration.setPortOnController(_port);
+            // for torque mode, there has to be a command value at least every send period
+            _config.getRateProfile(mode).apply(friConfiguration);
+            // gripper commands and state ride the FRI messages
+            if (_gripperIO != null)
+                _gripperIO.register(friConfiguration);
+            return friConfiguration;
+        }
+
+        private void startSession(ClientCommandMode mode)
+        {
+            // configure and start FRI session
+            FRIRateProfile rateProfile = _config.getRateProfile(mode);
+            if (rateProfile == null)
+                throw new IllegalStateException(_label + "Client command mode " + mode + " is not enabled");
+            FRIConfiguration friConfiguration = createConfiguration(_clientName, mode);
+            if (_gripperIO != null)
+                getLogger().info(_label + _gripperIO.toString());
+
+            getLogger().info(_label + "Creating FRI connection to " + friConfiguration.getHostName() + ":" + _port);
+            getLogger().info(_label + "SendPeriod: " + friConfiguration.getSendPeriodMilliSec() + "ms |"
+                    + " ReceiveMultiplier: " + friConfiguration.getReceiveMultiplier()
+                    + " | control_freq: " + rateProfile.getControlFrequency() + "Hz");
+
+            _supervisor = new FRISessionSupervisor(friConfiguration, _config.getRecoveryPolicy(), getLogger(), _timer);
+            if (!_label.isEmpty())
+                _supervisor.setName(_lbr.getName());
+            _supervisor.setEventLog(_events.source(_lbr.getName()));
+            if (_standbyClientName != null) {
+                _supervisor.setStandby(createConfiguration(_standbyClientName, mode));
+                getLogger().info(_label + "Standby FRI client: " + _standbyClientName + ":" + _port);
+            }
+            _supervisor.getEventLog().parameter("send_period_ms", friConfiguration.getSendPeriodMilliSec());
+            _supervisor.getEventLog().parameter("mode", mode);
+            _supervisor.startConnect(_config.getConnectTimeoutSec(), TimeUnit.SECONDS);
+        }
+
+        /**
+         * Starts the monitoring, the command channel and the overlay thread.
+         */
+        private void start()
+        {
+            _channelMonitor.start(_supervisor);
+            _telemetryRecorder.start(_supervisor);
+            _additionalOutputs.start(_supervisor, _tools.getMotionFrame());
+            FRIImpedanceTuner impedanceTuner = new FRIImpedanceTuner(_supervisor, _config.getImpedanceRamp(), _lbr.getJointCount(),
+                    _preset.getImpedance(), _config.isCartesianPose(), getLogger());
+            _commandServer.register("impedance", impedanceTuner);
+            _commandServer.register("mode", impedanceTuner.getModeHandler());
+            _linkGuard.start(_supervisor, impedanceTuner);
+            _commandServer.register("link", _linkGuard);
+            _supervisor.setContactGuard(_contactGuard);
+            _commandServer.register("contact", _contactGuard);
+            _envelopeGuard.start(_supervisor);
+            _commandServer.register("envelope", _envelopeGuard);
+            _trajectoryExecutor.setSupervisor(_supervisor);
+            _commandServer.register("trajectory", _trajectoryExecutor);
+            _tools.setSupervisor(_supervisor);
+            _commandServer.register("tool", _tools);
+            _commandServer.start();
+
+            _thread = new Thread(this, "FRIApplication " + _lbr.getName());
+            _thread.start();
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                // start PositionHold with overlay
+                _supervisor.runOverlay(_tools.getMotionFrame(), _preset.getMode(), _ctrMode);
+            }
+            catch (final RuntimeException e) {
+                getLogger().error(_label + "Overlay failed: " + e);
+            }
+            finally {
+                _commandServer.stop();
+                _linkGuard.stop();
+                _envelopeGuard.stop();
+                _channelMonitor.stop();
+                _telemetryRecorder.stop();
+                _additionalOutputs.stop();
+                _supervisor.close();
+            }
+        }
+
+        private void join()
+        {
+            try {
+                _thread.join();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final List<Robot> _robots = new ArrayList<Robot>();
+    private FRIApplicationConfig _config;
+    private FRIPhaseTimer _timer;
+    private FRIEventLog _events;
+
+    /**
+     * Describes the application; called once by {@link #initialize()}.
+     *
+     * @param config
+     *            the configuration, with the defaults of the cell
+     */
+    protected abstract void configure(FRIApplicationConfig config);
+
+    @Override
+    public void initialize()
+    {
+        _timer = new FRIPhaseTimer();
+        FRIPhaseTimer.Phase phase = _timer.start("initialize");
+
+        _config = new FRIApplicationConfig();
+        configure(_config);
+        _events = new FRIEventLog(_config.getEventLogCapacity(), _config.getEventLogFile(), getLogger());
+        _events.start();
+
+        // one FRI session per LBR, on all controllers of the station
+        List<Controller> controllers = new ArrayList<Controller>();
+        List<LBR> lbrs = new ArrayList<LBR>();
+        for (Controller controller : getContext().getControllers()) {
+            for (Device device : controller.getDevices()) {
+                if (device instanceof LBR && (lbrs.isEmpty() || _config.isAllRobots())) {
+                    controllers.add(controller);
+                    lbrs.add((LBR) device);
+                }
+            }
+        }
+        if (lbrs.isEmpty())
+            throw new IllegalStateException("No LBR found in the station");
+        _config.checkPorts(lbrs.size());
+        for (int i = 0; i < lbrs.size(); i++)
+            _robots.add(new Robot(controllers.get(i), lbrs.get(i), i, lbrs.size() > 1));
+        getLogger().info(_config.getRecoveryPolicy().toString());
+        getLogger().info(_config.getLinkPolicy().toString());
+
+        // with a preset, the FRI session is brought up while the application starts
+        for (Robot robot : _robots) {
+            FRIPhaseTimer.Phase presetPhase = robot.startPhase("preset");
+            robot._preset = FRIPreset.resolve(this, _config.getPresetsFile(), _robots.size() > 1 ? robot._lbr.getName() : null);
+            presetPhase.stop();
+            if (robot._preset != null)
+                robot.startSession(robot._preset.getMode());
+        }
+
+        // attach the tools (while the FRI sessions are brought up)
+        for (Robot robot : _robots) {
+            FRIPhaseTimer.Phase toolPhase = robot.startPhase("tool attachment");
+            robot._tools.attach(_config.getTool());
+            toolPhase.stop();
+        }
+        phase.stop();
+    }
+
+    @Override
+    public void run()
+    {
+        // the control modes are chosen first, as they select the FRI rate profiles
+        List<FRIDialog.Selection> selections = new ArrayList<FRIDialog.Selection>();
+        for (Robot robot : _robots) {
+            FRIDialog.Selection selection = null;
+            if (robot._preset != null)
+                getLogger().info(robot._label + robot._preset.toString());
+            else {
+                FRIPhaseTimer.Phase dialogPhase = robot.startPhase("mode dialog");
+                selection = new FRIDialog.Selection(_config.getDialogs(), this, robot._label);
+                ClientCommandMode mode = selection.chooseMode();
+                dialogPhase.stop();
+                robot.startSession(mode);
+            }
+            selections.add(selection);
+        }
+
+        // the control modes are built while the FRI sessions are brought up
+        for (int i = 0; i < _robots.size(); i++) {
+            Robot robot = _robots.get(i);
+            FRIDialog.Selection selection = selections.get(i);
+            FRIPhaseTimer.Phase phase = robot.startPhase(selection == null ? "control mode" : "control mode dialog");
+            try {
+                if (selection != null) {
+                    robot._preset = selection.finish();
+                    getLogger().info(robot._label + robot._preset.toString());
+                }
+                robot._ctrMode = robot._preset.createControlMode(robot._lbr.getJointCount());
+            }
+            catch (final IllegalArgumentException e) {
+                getLogger().error(robot._label + "Invalid choice: " + e.getLocalizedMessage());
+            }
+            phase.stop();
+        }
+
+        // a robot whose client does not connect does not hold back the others
+        List<Robot> connected = new ArrayList<Robot>();
+        for (Robot robot : _robots) {
+            boolean ready = robot._supervisor.awaitConnected();
+            if (ready && robot._ctrMode != null)
+                connected.add(robot);
+            else if (ready) {
+                getLogger().error(robot._label + "No control mode, robot left out");
+                robot._supervisor.close();
+            }
+            else
+                getLogger().error(robot._label + "FRI client " + robot._clientName + ":" + robot._port + " not connected, robot left out");
+        }
+        if (connected.isEmpty())
+            return;
+        _timer.report(getLogger());
+
+        // start the PositionHolds with overlay together, each on its own thread
+        for (Robot robot : connected)
+            robot.start();
+
+        // done
+        for (Robot robot : connected)
+            robot.join();
+    }
+
+    @Override
+    public void dispose()
+    {
+        // writes the events emitted until the end
+        if (_events != null)
+            _events.stop();
+
+        // the timings of the whole run, including teardown and reconnections
+        if (_timer != null) {
+            _timer.report(getLogger());
+            _timer.write(_config != null ? _config.getTimingFile() : null, getLogger());
+        }
+        super.dispose();
+    }
+
+    /**
+     * @return the file of one robot: the file itself with a single robot, else
+     *         the file name with the robot number appended (null stays null)
+     */
+    private static File robotFile(File file, int index, boolean multiRobot)
+    {
+        if (file == null || !multiRobot)
+            return file;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String suffix = "_" + (index + 1);
+        name = dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot);
+        return new File(file.getParentFile(), name);
+    }
+}
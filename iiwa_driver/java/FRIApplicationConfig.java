@@ -0,0 +1,555 @@
+package application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+
+/**
+ * Declarative description of an {@link FRIApplication}: session, start-up
+ * dialogs, tools and the features shared by all FRI applications (rate,
+ * recovery, monitoring, command channel, ...).
+ *
+ * The defaults below apply to every application of the cell; the entry points
+ * only set what differs in their <code>configure()</code>.
+ */
+public class FRIApplicationConfig
+{
+    /**
+     * The Cartesian pose client command mode, or null with a Sunrise.FRI
+     * version before 2.x, which does not have it. Resolved by name, so that
+     * the applications build with both.
+     */
+    static final ClientCommandMode CARTESIAN_POSE = resolveMode("CARTESIAN_POSE");
+
+    private String[] _clientNames;
+    private String[] _standbyClientNames;
+    private int _friPort;
+    private boolean _allRobots;
+    private long _connectTimeoutSec;
+    private final Map<ClientCommandMode, FRIRateProfile> _rateProfiles = new EnumMap<ClientCommandMode, FRIRateProfile>(ClientCommandMode.class);
+    private File _presetsFile;
+    private File _envelopeFile;
+    private final List<FRIDialog> _dialogs = new ArrayList<FRIDialog>();
+    private FRIRecoveryPolicy _recoveryPolicy;
+    private FRILinkPolicy _linkPolicy;
+    private int _monitorCapacity;
+    private long _monitorSummarySec;
+    private File _monitorFile;
+    private int _telemetryCapacity;
+    private File _telemetryFile;
+    private File _timingFile;
+    private int _eventLogCapacity;
+    private File _eventLogFile;
+    private int _outputsPort;
+    private int _commandPort;
+    private FRIImpedanceRamp _impedanceRamp;
+    private double _contactMaxJointTorque;
+    private double _contactMaxForce;
+    private FRIContactGuard.Reaction _contactReaction;
+    private FRIImpedance _contactImpedance;
+    private double[] _maxJointVelocity;
+    private String[] _toolTemplates = new String[0];
+    private String _tool = FRIToolRegistry.NONE;
+    private String[] _gripperIO;
+    private int _gripperPositionBits;
+
+    public FRIApplicationConfig()
+    {
+        // **********************************************************************
+        // *** FRIClient's IP address and FRI port (30200-30209)              ***
+        // **********************************************************************
+        _clientNames = new String[] { "192.170.10.1" };
+        _friPort = 30200;
+        _connectTimeoutSec = 10;
+
+        // **********************************************************************
+        // *** hot-standby FRIClients, taking over the session when a client  ***
+        // *** goes silent (none)                                             ***
+        // **********************************************************************
+        _standbyClientNames = new String[0];
+
+        // **********************************************************************
+        // *** FRI rate per control mode; control_freq in iiwa.yaml has to    ***
+        // *** match FRIRateProfile.getControlFrequency() of the chosen mode  ***
+        // **********************************************************************
+        _rateProfiles.put(ClientCommandMode.TORQUE, FRIRateProfile.RATE_200HZ);
+        _rateProfiles.put(ClientCommandMode.POSITION, FRIRateProfile.RATE_200HZ);
+        _rateProfiles.put(ClientCommandMode.WRENCH, FRIRateProfile.RATE_200HZ);
+
+        // **********************************************************************
+        // *** start-up preset file; without a preset, dialogs are shown      ***
+        // **********************************************************************
+        _presetsFile = new File("C:/KRC/ROBOTER/UserFiles/fri_presets.properties");
+
+        // **********************************************************************
+        // *** constraints enforced on the overlay (joint sub-ranges, box,    ***
+        // *** planes, keep-out cylinders); no constraints without the file   ***
+        // **********************************************************************
+        _envelopeFile = new File("C:/KRC/ROBOTER/UserFiles/fri_envelope.properties");
+
+        // **********************************************************************
+        // *** reconnection after ROS disconnects: retries, initial/max       ***
+        // *** backoff in ms, backoff factor, await timeout in s              ***
+        // **********************************************************************
+        _recoveryPolicy = new FRIRecoveryPolicy(10, 500, 5000, 2., 10);
+
+        // **********************************************************************
+        // *** fallbacks while the FRI link is degraded, disabled by default  ***
+        // *** as every damping step restarts the overlay (commanding stops); ***
+        // *** e.g. hold the position locally once the quality stays at or    ***
+        // *** below FAIR for 500ms, resume after 2000ms of better quality:   ***
+        // *** new FRILinkPolicy(2000, FRILinkPolicy.hold(                    ***
+        // ***         FRIConnectionQuality.FAIR, 500))                       ***
+        // **********************************************************************
+        _linkPolicy = FRILinkPolicy.disabled();
+
+        // **********************************************************************
+        // *** FRI channel monitor: samples kept, summary period in s,        ***
+        // *** summary file (null: log only)                                  ***
+        // **********************************************************************
+        _monitorCapacity = 2000;
+        _monitorSummarySec = 30;
+        _monitorFile = new File("C:/KRC/ROBOTER/UserFiles/fri_channel.csv");
+
+        // **********************************************************************
+        // *** telemetry recorder: samples kept and file (null: disabled),    ***
+        // *** e.g. new File("C:/KRC/ROBOTER/UserFiles/fri_telemetry.bin")    ***
+        // **********************************************************************
+        _telemetryCapacity = 60000;
+        _telemetryFile = null;
+
+        // **********************************************************************
+        // *** timing report of the run (start-up phases, first commanded     ***
+        // *** cycle, teardown, reconnection), written to <name>_<run>.csv    ***
+        // *** when the application ends (null: log only)                     ***
+        // **********************************************************************
+        _timingFile = new File("C:/KRC/ROBOTER/UserFiles/fri_timing.csv");
+
+        // **********************************************************************
+        // *** event log (session state, quality, reconnections, parameter    ***
+        // *** updates): events buffered between two writes (0: disabled),   ***
+        // *** file the events are appended to (null: log only)               ***
+        // **********************************************************************
+        _eventLogCapacity = 4096;
+        _eventLogFile = new File("C:/KRC/ROBOTER/UserFiles/fri_events.csv");
+
+        // **********************************************************************
+        // *** additional outputs computed on the controller (external        ***
+        // *** wrench at the motion frame, flange pose), UDP port of the      ***
+        // *** client (30000-30010, 0: disabled)                              ***
+        // **********************************************************************
+        _outputsPort = 30005;
+
+        // **********************************************************************
+        // *** command port for ROS (30000-30010, 0: disabled), disabled by   ***
+        // *** default as it is not authenticated (only the FRI clients may   ***
+        // *** connect), e.g. 30001; rate limits of live impedance changes:   ***
+        // *** joint/trans/rot stiffness per s, shortest step period in ms,   ***
+        // *** max steps (each step restarts the overlay; longer changes get  ***
+        // *** a longer period)                                               ***
+        // **********************************************************************
+        _commandPort = 0;
+        _impedanceRamp = new FRIImpedanceRamp(2000., 5000., 500., 100, 10);
+
+        // **********************************************************************
+        // *** contact reaction on the controller: max external joint torque  ***
+        // *** in Nm and max external force at the motion frame in N (0:      ***
+        // *** disabled), reaction and impedance of the compliant hold        ***
+        // **********************************************************************
+        _contactMaxJointTorque = 0.;
+        _contactMaxForce = 0.;
+        _contactReaction = FRIContactGuard.Reaction.COMPLIANT_HOLD;
+        _contactImpedance = FRIImpedance.joint(50., 0.7);
+
+        // **********************************************************************
+        // *** batched trajectories executed on the controller: maximum       ***
+        // *** joint velocities in deg/s (LBR iiwa 14 R820; LBR iiwa 7 R800:  ***
+        // *** 98, 98, 100, 130, 140, 180, 180)                               ***
+        // **********************************************************************
+        _maxJointVelocity = new double[] { 85., 85., 100., 75., 130., 135., 135. };
+    }
+
+    /**
+     * Sets the FRIClients, one per LBR in the order of the devices (the last
+     * one is used for the remaining robots), and the FRI port of the first
+     * robot; the next robots use the following ports.
+     */
+    public void setClients(int friPort, String... clientNames)
+    {
+        if (clientNames.length == 0)
+            throw new IllegalArgumentException("expected a client");
+        _friPort = friPort;
+        _clientNames = clientNames;
+    }
+
+    /**
+     * Sets the hot-standby FRIClients, one per LBR as in
+     * {@link #setClients(int, String...)}, on the same FRI ports. When a
+     * client disconnects, the robot holds its position and the session is
+     * created to its standby right away; the next reconnection attempts
+     * alternate between both. No arguments: no standby.
+     */
+    public void setStandbyClients(String... clientNames)
+    {
+        _standbyClientNames = clientNames;
+    }
+
+    /**
+     * Runs one FRI session per LBR of the station instead of one for the
+     * first LBR.
+     */
+    public void setAllRobots(boolean allRobots)
+    {
+        _allRobots = allRobots;
+    }
+
+    public void setConnectTimeout(long connectTimeoutSec)
+    {
+        _connectTimeoutSec = connectTimeoutSec;
+    }
+
+    public void setRateProfile(ClientCommandMode mode, FRIRateProfile rateProfile)
+    {
+        _rateProfiles.put(mode, rateProfile);
+    }
+
+    /**
+     * Enables the Cartesian pose overlay ({@link #CARTESIAN_POSE}, 'pose' in
+     * the <code>mode</code> command) at a rate, or disables it (null, the
+     * default). It needs Sunrise.FRI 2.x and the driver built with
+     * <code>FRI_CARTESIAN_POSE</code>; the mode dialog of the application
+     * has to offer it, see {@link FRIDialog#modes(String, boolean)}.
+     *
+     * @throws IllegalStateException
+     *             if this Sunrise.FRI version has no Cartesian pose overlay
+     */
+    public void setCartesianPose(FRIRateProfile rateProfile)
+    {
+        if (rateProfile == null) {
+            if (CARTESIAN_POSE != null)
+                _rateProfiles.remove(CARTESIAN_POSE);
+            return;
+        }
+        if (CARTESIAN_POSE == null)
+            throw new IllegalStateException("The Cartesian pose overlay needs Sunrise.FRI 2.x");
+        _rateProfiles.put(CARTESIAN_POSE, rateProfile);
+    }
+
+    public void setPresetsFile(File presetsFile)
+    {
+        _presetsFile = presetsFile;
+    }
+
+    /**
+     * Sets the file of the {@link FRIEnvelope} enforced on the overlay (null:
+     * none).
+     */
+    public void setEnvelopeFile(File envelopeFile)
+    {
+        _envelopeFile = envelopeFile;
+    }
+
+    /**
+     * Adds a start-up dialog, shown after the previous ones when no preset is
+     * used.
+     */
+    public void addDialog(FRIDialog dialog)
+    {
+        _dialogs.add(dialog);
+    }
+
+    public void setRecoveryPolicy(FRIRecoveryPolicy recoveryPolicy)
+    {
+        _recoveryPolicy = recoveryPolicy;
+    }
+
+    public void setLinkPolicy(FRILinkPolicy linkPolicy)
+    {
+        _linkPolicy = linkPolicy;
+    }
+
+    public void setChannelMonitor(int capacity, long summaryPeriodSec, File summaryFile)
+    {
+        _monitorCapacity = capacity;
+        _monitorSummarySec = summaryPeriodSec;
+        _monitorFile = summaryFile;
+    }
+
+    public void setTelemetry(int capacity, File file)
+    {
+        _telemetryCapacity = capacity;
+        _telemetryFile = file;
+    }
+
+    public void setTimingFile(File timingFile)
+    {
+        _timingFile = timingFile;
+    }
+
+    public void setEventLog(int capacity, File file)
+    {
+        _eventLogCapacity = capacity;
+        _eventLogFile = file;
+    }
+
+    public void setOutputsPort(int outputsPort)
+    {
+        _outputsPort = outputsPort;
+    }
+
+    public void setCommandPort(int commandPort, FRIImpedanceRamp impedanceRamp)
+    {
+        _commandPort = commandPort;
+        _impedanceRamp = impedanceRamp;
+    }
+
+    public void setContactGuard(double maxJointTorque, double maxForce, FRIContactGuard.Reaction reaction, FRIImpedance compliantImpedance)
+    {
+        _contactMaxJointTorque = maxJointTorque;
+        _contactMaxForce = maxForce;
+        _contactReaction = reaction;
+        _contactImpedance = compliantImpedance;
+    }
+
+    public void setMaxJointVelocity(double... maxJointVelocity)
+    {
+        _maxJointVelocity = maxJointVelocity;
+    }
+
+    /**
+     * Sets the tool templates loaded at start-up and the tool attached first
+     * ({@link FRIToolRegistry#NONE}: flange).
+     */
+    public void setTools(String[] templates, String attached)
+    {
+        _toolTemplates = templates;
+        _tool = attached;
+    }
+
+    /**
+     * Maps the gripper I/O into the FRI session, see {@link FRIGripperIO}.
+     */
+    public void setGripperIO(String groupName, String closeOutput, String positionOutput, String closedInput, String positionInput, int positionBits)
+    {
+        _gripperIO = new String[] { groupName, closeOutput, positionOutput, closedInput, positionInput };
+        _gripperPositionBits = positionBits;
+    }
+
+    /**
+     * Checks the ports of the robots: robot <code>i</code> (from 0) uses the
+     * FRI, command and outputs ports plus <code>i</code>.
+     *
+     * @param robotCount
+     *            the number of robots
+     * @throws IllegalStateException
+     *             if a port is outside the range open on the KONI (FRI:
+     *             30200-30209, others: 30000-30010) or used twice
+     */
+    void checkPorts(int robotCount)
+    {
+        Map<Integer, String> used = new HashMap<Integer, String>();
+        for (int i = 0; i < robotCount; i++) {
+            checkPort(used, "FRI port", _friPort + i, 30200, 30209, i);
+            if (_commandPort > 0)
+                checkPort(used, "command port", _commandPort + i, 30000, 30010, i);
+            if (_outputsPort > 0)
+                checkPort(used, "outputs port", _outputsPort + i, 30000, 30010, i);
+        }
+    }
+
+    private static void checkPort(Map<Integer, String> used, String name, int port, int min, int max, int robot)
+    {
+        String label = name + " " + port + " of robot " + (robot + 1);
+        if (port < min || port > max)
+            throw new IllegalStateException("The " + label + " is outside " + min + "-" + max);
+        String other = used.put(port, label);
+        if (other != null)
+            throw new IllegalStateException("The " + label + " is also the " + other);
+    }
+
+    String getClientName(int index)
+    {
+        return _clientNames[Math.min(index, _clientNames.length - 1)];
+    }
+
+    /**
+     * @return the standby client of a robot, or null if it has none
+     */
+    String getStandbyClientName(int index)
+    {
+        if (_standbyClientNames.length == 0)
+            return null;
+        return _standbyClientNames[Math.min(index, _standbyClientNames.length - 1)];
+    }
+
+    int getFriPort()
+    {
+        return _friPort;
+    }
+
+    boolean isAllRobots()
+    {
+        return _allRobots;
+    }
+
+    long getConnectTimeoutSec()
+    {
+        return _connectTimeoutSec;
+    }
+
+    /**
+     * @return the rate of a client command mode, or null if the mode is not
+     *         enabled
+     */
+    FRIRateProfile getRateProfile(ClientCommandMode mode)
+    {
+        return _rateProfiles.get(mode);
+    }
+
+    boolean isCartesianPose()
+    {
+        return CARTESIAN_POSE != null && _rateProfiles.containsKey(CARTESIAN_POSE);
+    }
+
+    File getPresetsFile()
+    {
+        return _presetsFile;
+    }
+
+    File getEnvelopeFile()
+    {
+        return _envelopeFile;
+    }
+
+    List<FRIDialog> getDialogs()
+    {
+        return _dialogs;
+    }
+
+    FRIRecoveryPolicy getRecoveryPolicy()
+    {
+        return _recoveryPolicy;
+    }
+
+    FRILinkPolicy getLinkPolicy()
+    {
+        return _linkPolicy;
+    }
+
+    int getMonitorCapacity()
+    {
+        return _monitorCapacity;
+    }
+
+    long getMonitorSummarySec()
+    {
+        return _monitorSummarySec;
+    }
+
+    File getMonitorFile()
+    {
+        return _monitorFile;
+    }
+
+    int getTelemetryCapacity()
+    {
+        return _telemetryCapacity;
+    }
+
+    File getTelemetryFile()
+    {
+        return _telemetryFile;
+    }
+
+    File getTimingFile()
+    {
+        return _timingFile;
+    }
+
+    int getEventLogCapacity()
+    {
+        return _eventLogCapacity;
+    }
+
+    File getEventLogFile()
+    {
+        return _eventLogFile;
+    }
+
+    int getOutputsPort()
+    {
+        return _outputsPort;
+    }
+
+    int getCommandPort()
+    {
+        return _commandPort;
+    }
+
+    FRIImpedanceRamp getImpedanceRamp()
+    {
+        return _impedanceRamp;
+    }
+
+    double getContactMaxJointTorque()
+    {
+        return _contactMaxJointTorque;
+    }
+
+    double getContactMaxForce()
+    {
+        return _contactMaxForce;
+    }
+
+    FRIContactGuard.Reaction getContactReaction()
+    {
+        return _contactReaction;
+    }
+
+    FRIImpedance getContactImpedance()
+    {
+        return _contactImpedance;
+    }
+
+    double[] getMaxJointVelocity()
+    {
+        return _maxJointVelocity;
+    }
+
+    String[] getToolTemplates()
+    {
+        return _toolTemplates;
+    }
+
+    String getTool()
+    {
+        return _tool;
+    }
+
+    /**
+     * @return group name, close, position, closed and actual position
+     *         signals, or null if the gripper I/O is not mapped
+     */
+    String[] getGripperIO()
+    {
+        return _gripperIO;
+    }
+
+    int getGripperPositionBits()
+    {
+        return _gripperPositionBits;
+    }
+
+    private static ClientCommandMode resolveMode(String name)
+    {
+        for (ClientCommandMode mode : ClientCommandMode.values())
+            if (mode.name().equals(name))
+                return mode;
+        return null;
+    }
+}
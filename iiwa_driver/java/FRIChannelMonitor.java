@@ -0,0 +1,254 @@
+package application;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import com.kuka.connectivity.fastRobotInterface.FRIChannelInformation;
+import com.kuka.connectivity.fastRobotInterface.FRIConnectionQuality;
+import com.kuka.connectivity.fastRobotInterface.FRISession;
+import com.kuka.connectivity.fastRobotInterface.FRISessionState;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Background sampler of the FRI channel information (quality, jitter and
+ * latency) of the session of a {@link FRISessionSupervisor}.
+ *
+ * Every send period, one sample is written into a preallocated ring buffer and
+ * into jitter/latency histograms. Every summary period, the histograms and the
+ * quality counts are logged (and appended to the summary file, if any) and
+ * reset. When the session leaves COMMANDING_ACTIVE, the ring buffer (the last
+ * samples before the drop) is written next to the summary file.
+ *
+ * Sunrise does not expose missed packets to the application; samples with a
+ * quality below GOOD and samples without an active session are counted
+ * instead.
+ *
+ * Changes of the session state and of the quality are emitted to the
+ * {@link FRIEventLog} of the supervisor.
+ */
+public class FRIChannelMonitor extends FRIPeriodicTask
+{
+    private static final FRIConnectionQuality[] QUALITIES = FRIConnectionQuality.values();
+
+    private final ITaskLogger _logger;
+    private final long _summaryPeriodNanos;
+    private final File _summaryFile;
+
+    // ring buffer
+    private final long[] _timestamps;
+    private final float[] _jitter;
+    private final float[] _latency;
+    private final byte[] _quality;
+    private int _head;
+    private int _size;
+
+    // statistics of the current summary period
+    private final FRIHistogram _jitterHistogram = new FRIHistogram();
+    private final FRIHistogram _latencyHistogram = new FRIHistogram();
+    private final long[] _qualityCounts = new long[QUALITIES.length];
+    private long _degradedSamples;
+    private long _inactiveSamples;
+
+    private FRISessionSupervisor _supervisor;
+    private FRIEventLog.Source _events;
+    private long _nextSummary;
+    private boolean _wasActive;
+    private FRISessionState _lastState;
+    private FRIConnectionQuality _lastQuality;
+
+    /**
+     * @param logger
+     *            logger for the summaries
+     * @param capacity
+     *            number of samples kept in the ring buffer
+     * @param summaryPeriodSec
+     *            period of the summaries
+     * @param summaryFile
+     *            file the summaries are appended to, or null to only log them
+     */
+    public FRIChannelMonitor(ITaskLogger logger, int capacity, long summaryPeriodSec, File summaryFile)
+    {
+        super("FRIChannelMonitor");
+        _logger = logger;
+        _summaryPeriodNanos = summaryPeriodSec * 1000000000L;
+        _summaryFile = summaryFile;
+        _timestamps = new long[capacity];
+        _jitter = new float[capacity];
+        _latency = new float[capacity];
+        _quality = new byte[capacity];
+    }
+
+    /**
+     * Starts sampling at the send period of the session.
+     */
+    public synchronized void start(FRISessionSupervisor supervisor)
+    {
+        if (isRunning())
+            return;
+        _supervisor = supervisor;
+        _events = supervisor.getEventLog();
+        _nextSummary = System.nanoTime() + _summaryPeriodNanos;
+        _wasActive = false;
+        _lastState = null;
+        _lastQuality = null;
+        startPeriodic(supervisor.getConfiguration().getSendPeriodMilliSec() * 1000000L);
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        boolean active = sample(now);
+        if (_wasActive && !active)
+            dump(now);
+        _wasActive = active;
+
+        if (now >= _nextSummary) {
+            summarize();
+            _nextSummary += _summaryPeriodNanos;
+        }
+    }
+
+    @Override
+    protected void finish()
+    {
+        summarize();
+    }
+
+    /**
+     * @return true if the session is COMMANDING_ACTIVE
+     */
+    private boolean sample(long now)
+    {
+        FRISession session = _supervisor.getSession();
+        if (session == null) {
+            _inactiveSamples++;
+            return false;
+        }
+
+        FRIChannelInformation info;
+        try {
+            info = session.getFRIChannelInformation();
+        }
+        catch (final RuntimeException e) {
+            // session closed in the meantime
+            _inactiveSamples++;
+            return false;
+        }
+
+        double jitter = info.getJitter();
+        double latency = info.getLatency();
+        FRIConnectionQuality quality = info.getQuality();
+
+        synchronized (this) {
+            _timestamps[_head] = now;
+            _jitter[_head] = (float) jitter;
+            _latency[_head] = (float) latency;
+            _quality[_head] = (byte) quality.ordinal();
+            _head = (_head + 1) % _timestamps.length;
+            if (_size < _timestamps.length)
+                _size++;
+
+            _jitterHistogram.recordMilliSec(jitter);
+            _latencyHistogram.recordMilliSec(latency);
+            _qualityCounts[quality.ordinal()]++;
+            if (quality.compareTo(FRIConnectionQuality.GOOD) < 0)
+                _degradedSamples++;
+        }
+
+        FRISessionState state = info.getFRISessionState();
+        if (state != _lastState) {
+            _events.sessionState(_lastState, state);
+            _lastState = state;
+        }
+        if (quality != _lastQuality) {
+            _events.quality(_lastQuality, quality);
+            _lastQuality = quality;
+        }
+
+        boolean active = state == FRISessionState.COMMANDING_ACTIVE;
+        if (!active)
+            _inactiveSamples++;
+        return active;
+    }
+
+    private synchronized void summarize()
+    {
+        if (_jitterHistogram.getCount() == 0 && _inactiveSamples == 0)
+            return;
+
+        StringBuilder qualities = new StringBuilder();
+        for (int i = 0; i < QUALITIES.length; i++)
+            qualities.append(QUALITIES[i]).append(' ').append(_qualityCounts[i]).append(i + 1 < QUALITIES.length ? " | " : "");
+
+        _logger.info("[FRI channel] samples " + _jitterHistogram.getCount() + " | degraded " + _degradedSamples + " | inactive " + _inactiveSamples);
+        _logger.info("[FRI channel] jitter ms: " + _jitterHistogram.summary());
+        _logger.info("[FRI channel] latency ms: " + _latencyHistogram.summary());
+        _logger.info("[FRI channel] quality: " + qualities);
+
+        if (_summaryFile != null) {
+            try {
+                boolean header = !_summaryFile.exists();
+                PrintWriter out = new PrintWriter(new FileWriter(_summaryFile, true));
+                try {
+                    if (header)
+                        out.println("time_ms,samples,degraded,inactive,jitter_mean,jitter_p50,jitter_p99,jitter_p999,jitter_max,latency_mean,latency_p50,latency_p99,latency_p999,latency_max");
+                    out.println(System.currentTimeMillis() + "," + _jitterHistogram.getCount() + "," + _degradedSamples + "," + _inactiveSamples + ","
+                            + csv(_jitterHistogram) + "," + csv(_latencyHistogram));
+                }
+                finally {
+                    out.close();
+                }
+            }
+            catch (final IOException e) {
+                _logger.warn("Cannot write FRI channel summary: " + e.getLocalizedMessage());
+            }
+        }
+
+        _jitterHistogram.reset();
+        _latencyHistogram.reset();
+        for (int i = 0; i < _qualityCounts.length; i++)
+            _qualityCounts[i] = 0;
+        _degradedSamples = 0;
+        _inactiveSamples = 0;
+    }
+
+    private static String csv(FRIHistogram histogram)
+    {
+        return String.format(Locale.ROOT, "%.3f,%.3f,%.3f,%.3f,%.3f", histogram.getMeanMilliSec(), histogram.getPercentileMilliSec(50.),
+                histogram.getPercentileMilliSec(99.), histogram.getPercentileMilliSec(99.9), histogram.getMaxMilliSec());
+    }
+
+    /**
+     * Writes the ring buffer (oldest sample first) after the session has left
+     * COMMANDING_ACTIVE.
+     */
+    private synchronized void dump(long now)
+    {
+        _logger.warn("[FRI channel] session left COMMANDING_ACTIVE");
+        if (_summaryFile == null || _size == 0)
+            return;
+
+        File file = new File(_summaryFile.getParentFile(), "fri_channel_drop_" + System.currentTimeMillis() + ".csv");
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(file));
+            try {
+                out.println("t_ms,jitter_ms,latency_ms,quality");
+                int start = (_head - _size + _timestamps.length) % _timestamps.length;
+                for (int i = 0; i < _size; i++) {
+                    int k = (start + i) % _timestamps.length;
+                    out.println(String.format(Locale.ROOT, "%.3f,%.3f,%.3f,%s", (_timestamps[k] - now) / 1e6, _jitter[k], _latency[k], QUALITIES[_quality[k]]));
+                }
+            }
+            finally {
+                out.close();
+            }
+            _logger.info("[FRI channel] last " + _size + " samples written to " + file.getPath());
+        }
+        catch (final IOException e) {
+            _logger.warn("Cannot write FRI channel samples: " + e.getLocalizedMessage());
+        }
+    }
+}
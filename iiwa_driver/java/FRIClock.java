@@ -0,0 +1,38 @@
+package application;
+
+/**
+ * Clock of the robot application: nanoseconds since the epoch, read from the
+ * monotonic System.nanoTime() anchored once to the wall clock. Adjustments of
+ * the wall clock of the controller do not make it jump; its drift against the
+ * client's clock is tracked by the client (see {@link FRIClockSync}).
+ *
+ * The timestamps of the additional outputs, the clock synchronization and the
+ * event log use this clock, so they can all be converted to ROS time.
+ */
+public final class FRIClock
+{
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final long ORIGIN_EPOCH_NANOS = System.currentTimeMillis() * 1000000L;
+
+    private FRIClock()
+    {
+    }
+
+    /**
+     * @return the current time [ns since the epoch]
+     */
+    public static long epochNanos()
+    {
+        return epochNanos(System.nanoTime());
+    }
+
+    /**
+     * @param nanoTime
+     *            a value of System.nanoTime()
+     * @return the time [ns since the epoch]
+     */
+    public static long epochNanos(long nanoTime)
+    {
+        return ORIGIN_EPOCH_NANOS + (nanoTime - ORIGIN_NANOS);
+    }
+}
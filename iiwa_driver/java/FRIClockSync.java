@@ -0,0 +1,96 @@
+package application;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Responder of the clock synchronization with the FRI client, in the style of
+ * PTP: the client sends a request with its send time t1; the responder stamps
+ * the reception t2 and the reply t3 with the {@link FRIClock}. With the
+ * reception time t4 of the reply, the client estimates the offset of the
+ * controller clock ((t2 - t1) + (t3 - t4)) / 2 from the samples with the
+ * lowest round trip, and tracks its drift over time.
+ *
+ * The requests arrive on the socket of the {@link FRIAdditionalOutputs}; the
+ * responder runs on its own thread and does not allocate.
+ *
+ * Request (little endian, 24 bytes) and reply (40 bytes):
+ *
+ * <pre>
+ *   int32  magic 'FRIS', int32 version, int64 sequence number,
+ *   int64  t1 [ns, client clock]
+ * reply, in addition:
+ *   int64  t2, t3 [ns since the epoch, controller clock]
+ * </pre>
+ */
+public class FRIClockSync implements Runnable
+{
+    private static final int MAGIC = 0x46524953; // 'FRIS'
+    private static final int VERSION = 1;
+    private static final int REQUEST_SIZE = 24;
+    private static final int REPLY_SIZE = 40;
+
+    private final DatagramSocket _socket;
+    private final ITaskLogger _logger;
+    private final ByteBuffer _request = ByteBuffer.allocate(REQUEST_SIZE + 1).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer _reply = ByteBuffer.allocate(REPLY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final DatagramPacket _requestPacket = new DatagramPacket(_request.array(), REQUEST_SIZE + 1);
+    private final DatagramPacket _replyPacket = new DatagramPacket(_reply.array(), REPLY_SIZE);
+    private long _replies;
+
+    /**
+     * @param socket
+     *            the socket the requests arrive on; the responder ends when
+     *            it is closed
+     * @param logger
+     *            logger
+     */
+    public FRIClockSync(DatagramSocket socket, ITaskLogger logger)
+    {
+        _socket = socket;
+        _logger = logger;
+    }
+
+    public void start()
+    {
+        Thread thread = new Thread(this, "FRIClockSync");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        while (!_socket.isClosed()) {
+            try {
+                _requestPacket.setLength(REQUEST_SIZE + 1);
+                _socket.receive(_requestPacket);
+                long t2 = FRIClock.epochNanos();
+                if (_requestPacket.getLength() != REQUEST_SIZE || _request.getInt(0) != MAGIC || _request.getInt(4) != VERSION)
+                    continue;
+
+                _reply.clear();
+                _reply.putInt(MAGIC);
+                _reply.putInt(VERSION);
+                _reply.putLong(_request.getLong(8));
+                _reply.putLong(_request.getLong(16));
+                _reply.putLong(t2);
+                _replyPacket.setSocketAddress(_requestPacket.getSocketAddress());
+                _reply.putLong(FRIClock.epochNanos());
+                _socket.send(_replyPacket);
+                if (_replies++ == 0)
+                    _logger.info("Clock synchronization with " + _requestPacket.getAddress().getHostAddress() + " started");
+            }
+            catch (final IOException e) {
+                // closed with the additional outputs
+                if (!_socket.isClosed())
+                    _logger.warn("Clock synchronization reply not sent: " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Side channel next to FRI for commands that change the running application
+ * (e.g. the impedance of the PositionHold) without going through the FRI
+ * packets.
+ *
+ * Line-based TCP protocol, one client at a time: each request is a line
+ * <code>&lt;command&gt; [&lt;args&gt;...]</code> (separated by whitespace),
+ * answered by one line <code>ok [&lt;text&gt;]</code> or
+ * <code>error &lt;text&gt;</code>. The port has to be one of the ports open
+ * for applications on the KONI (30000 to 30010). The command
+ * <code>ping</code> is always available.
+ *
+ * The channel is not authenticated and can retune or stop the overlay of a
+ * live robot, so only the given clients (the FRI clients) may connect; other
+ * connections are closed right away.
+ */
+public class FRICommandServer implements Runnable
+{
+    /**
+     * Executes one command; runs on the thread of the server.
+     */
+    public interface Handler
+    {
+        /**
+         * @param args
+         *            the arguments following the command
+         * @return the text of the reply, or null
+         * @throws IllegalArgumentException
+         *             if the arguments are invalid
+         * @throws IllegalStateException
+         *             if the command cannot be executed now
+         */
+        String handle(String[] args);
+    }
+
+    private final int _port;
+    private final ITaskLogger _logger;
+    private final String[] _clientNames;
+    private final List<InetAddress> _clients = new ArrayList<InetAddress>();
+    private final Map<String, Handler> _handlers = new HashMap<String, Handler>();
+    private ServerSocket _serverSocket;
+    private Socket _client;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    /**
+     * @param port
+     *            the TCP port to listen on; 0 disables the server
+     * @param logger
+     *            logger
+     * @param clientNames
+     *            the hosts allowed to connect (null entries are ignored)
+     */
+    public FRICommandServer(int port, ITaskLogger logger, String... clientNames)
+    {
+        _port = port;
+        _logger = logger;
+        _clientNames = clientNames;
+    }
+
+    public boolean isEnabled()
+    {
+        return _port > 0;
+    }
+
+    public synchronized void register(String command, Handler handler)
+    {
+        _handlers.put(command, handler);
+    }
+
+    /**
+     * Starts listening. Does nothing if the server is disabled.
+     */
+    public synchronized void start()
+    {
+        if (!isEnabled() || _running)
+            return;
+        try {
+            _clients.clear();
+            for (String clientName : _clientNames)
+                if (clientName != null)
+                    _clients.add(InetAddress.getByName(clientName));
+            _serverSocket = new ServerSocket(_port);
+        }
+        catch (final IOException e) {
+            _logger.error("Cannot open command port " + _port + ": " + e.getLocalizedMessage());
+            return;
+        }
+        _logger.info("Listening for commands on port " + _port + " from " + _clients);
+        _running = true;
+        _thread = new Thread(this, "FRICommandServer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Closes the server and the connected client.
+     */
+    public void stop()
+    {
+        Thread thread;
+        synchronized (this) {
+            _running = false;
+            thread = _thread;
+            _thread = null;
+            closeQuietly(_serverSocket);
+            closeQuietly(_client);
+        }
+        if (thread == null)
+            return;
+        try {
+            thread.join();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (_running) {
+            Socket client;
+            try {
+                client = _serverSocket.accept();
+            }
+            catch (final IOException e) {
+                if (_running)
+                    _logger.error("Command server stopped: " + e.getLocalizedMessage());
+                break;
+            }
+
+            if (!_clients.contains(client.getInetAddress())) {
+                _logger.warn("Command connection from " + client.getInetAddress().getHostAddress() + " refused: not an FRI client");
+                closeQuietly(client);
+                continue;
+            }
+
+            synchronized (this) {
+                _client = client;
+            }
+            _logger.info("Command client connected from " + client.getInetAddress().getHostAddress());
+            try {
+                client.setTcpNoDelay(true);
+                serve(client);
+            }
+            catch (final IOException e) {
+                if (_running)
+                    _logger.warn("Command client: " + e.getLocalizedMessage());
+            }
+            finally {
+                synchronized (this) {
+                    _client = null;
+                }
+                closeQuietly(client);
+            }
+            if (_running)
+                _logger.info("Command client disconnected");
+        }
+    }
+
+    private void serve(Socket client) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "US-ASCII"));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), "US-ASCII"));
+
+        String line;
+        while (_running && (line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            out.print(execute(line));
+            out.print('\n');
+            out.flush();
+        }
+    }
+
+    private String execute(String line)
+    {
+        String[] tokens = line.split("\\s+");
+        String[] args = new String[tokens.length - 1];
+        System.arraycopy(tokens, 1, args, 0, args.length);
+
+        if (tokens[0].equals("ping"))
+            return "ok pong";
+
+        Handler handler;
+        synchronized (this) {
+            handler = _handlers.get(tokens[0]);
+        }
+        if (handler == null)
+            return "error unknown command " + tokens[0];
+
+        try {
+            String reply = handler.handle(args);
+            return reply == null ? "ok" : "ok " + reply;
+        }
+        catch (final IllegalArgumentException e) {
+            return "error " + e.getMessage();
+        }
+        catch (final IllegalStateException e) {
+            return "error " + e.getMessage();
+        }
+        catch (final RuntimeException e) {
+            _logger.error("Command '" + line + "' failed: " + e);
+            return "error " + e;
+        }
+    }
+
+    private static void closeQuietly(ServerSocket socket)
+    {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        }
+        catch (final IOException e) {
+            // closing anyway
+        }
+    }
+
+    private static void closeQuietly(Socket socket)
+    {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        }
+        catch (final IOException e) {
+            // closing anyway
+        }
+    }
+}
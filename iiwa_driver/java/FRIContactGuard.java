@@ -0,0 +1,262 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.roboticsAPI.conditionModel.ForceCondition;
+import com.kuka.roboticsAPI.conditionModel.ICondition;
+import com.kuka.roboticsAPI.conditionModel.IFiredConditionInfo;
+import com.kuka.roboticsAPI.conditionModel.JointTorqueCondition;
+import com.kuka.roboticsAPI.deviceModel.JointEnum;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.motionModel.IMotionContainer;
+import com.kuka.roboticsAPI.motionModel.PositionHold;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.PositionControlMode;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Contact reaction on the controller: break conditions on the external joint
+ * torques and on the external force at the motion frame end the overlay
+ * motion as soon as a threshold is exceeded, without a round trip to the
+ * client. The robot then holds its position, stiffly ({@link Reaction#STOP})
+ * or with a soft joint impedance ({@link Reaction#COMPLIANT_HOLD}), until the
+ * client resumes the overlay.
+ *
+ * The client sees the overlay end (the session leaves COMMANDING_ACTIVE). The
+ * number of contacts and whether the robot holds after one are pushed to the
+ * client with every datagram of the {@link FRIAdditionalOutputs}, so that it
+ * stops commanding at once; the event itself and the reaction are available
+ * with the <code>contact</code> command of the {@link FRICommandServer}:
+ *
+ * <pre>
+ * contact                    status and last event
+ * contact resume             restart the overlay after a contact
+ * contact stop               end the overlay after a contact
+ * contact torque &lt;Nm&gt;        external joint torque threshold (0: off)
+ * contact force &lt;N&gt;          external force threshold (0: off)
+ * contact reaction stop|compliant
+ * </pre>
+ *
+ * Threshold changes restart the running overlay on the same session.
+ */
+public class FRIContactGuard implements FRICommandServer.Handler
+{
+    public enum Reaction
+    {
+        STOP, COMPLIANT_HOLD
+    }
+
+    private final LBR _lbr;
+    private final FRIImpedance _compliantImpedance;
+    private final ITaskLogger _logger;
+    private double _maxJointTorque;
+    private double _maxForce;
+    private Reaction _reaction;
+    private FRISessionSupervisor _supervisor;
+
+    // conditions of the running overlay
+    private final List<ICondition> _torqueConditions = new ArrayList<ICondition>();
+    private ICondition _forceCondition;
+
+    // contact state
+    private String _lastEvent;
+    private boolean _holding;
+    private volatile long _contacts;
+    private Boolean _resume;
+
+    /**
+     * @param lbr
+     *            the robot
+     * @param maxJointTorque
+     *            external torque threshold of every joint [Nm], 0 to disable
+     * @param maxForce
+     *            external force threshold at the motion frame [N], 0 to
+     *            disable
+     * @param reaction
+     *            the reaction on a contact
+     * @param compliantImpedance
+     *            the impedance of the compliant hold
+     * @param logger
+     *            logger
+     */
+    public FRIContactGuard(LBR lbr, double maxJointTorque, double maxForce, Reaction reaction, FRIImpedance compliantImpedance, ITaskLogger logger)
+    {
+        _lbr = lbr;
+        _maxJointTorque = maxJointTorque;
+        _maxForce = maxForce;
+        _reaction = reaction;
+        _compliantImpedance = compliantImpedance;
+        _logger = logger;
+    }
+
+    /**
+     * Called by {@link FRISessionSupervisor#setContactGuard(FRIContactGuard)}.
+     */
+    synchronized void setSupervisor(FRISessionSupervisor supervisor)
+    {
+        _supervisor = supervisor;
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return _maxJointTorque > 0. || _maxForce > 0.;
+    }
+
+    /**
+     * Adds the break conditions to the PositionHold of the overlay.
+     *
+     * @param posHold
+     *            the PositionHold, before the overlay is added
+     * @param motionFrame
+     *            the frame the force is measured in
+     */
+    public synchronized void apply(PositionHold posHold, ObjectFrame motionFrame)
+    {
+        _torqueConditions.clear();
+        _forceCondition = null;
+
+        if (_maxJointTorque > 0.) {
+            for (int i = 0; i < _lbr.getJointCount(); i++) {
+                ICondition condition = new JointTorqueCondition(JointEnum.values()[i], -_maxJointTorque, _maxJointTorque);
+                _torqueConditions.add(condition);
+                posHold.breakWhen(condition);
+            }
+        }
+        if (_maxForce > 0.) {
+            _forceCondition = ForceCondition.createSpatialForceCondition(motionFrame, _maxForce);
+            posHold.breakWhen(_forceCondition);
+        }
+    }
+
+    /**
+     * Reacts on a broken overlay motion: records the event and holds the
+     * robot until the client resumes or stops.
+     *
+     * @param motionFrame
+     *            the frame of the overlay motion
+     * @param fired
+     *            the fired break condition
+     * @return true if the overlay has to be restarted
+     */
+    public boolean react(ObjectFrame motionFrame, IFiredConditionInfo fired)
+    {
+        Reaction reaction;
+        synchronized (this) {
+            _lastEvent = describe(motionFrame, fired.getFiredCondition());
+            if (_supervisor != null)
+                _supervisor.getEventLog().contact(_lastEvent);
+            reaction = _reaction;
+            _holding = true;
+            _contacts++;
+            _resume = null;
+        }
+        _logger.warn("Contact: " + _lastEvent + ", " + (reaction == Reaction.STOP ? "holding" : "compliant hold") + " until resumed");
+
+        IMotionContainer hold = motionFrame.moveAsync(new PositionHold(reaction == Reaction.STOP ? new PositionControlMode()
+                : _compliantImpedance.createControlMode(_lbr.getJointCount(), ClientCommandMode.POSITION), -1, TimeUnit.SECONDS));
+
+        boolean resume = false;
+        synchronized (this) {
+            try {
+                while (_resume == null)
+                    wait();
+                resume = _resume;
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            _holding = false;
+        }
+        hold.cancel();
+        _logger.info(resume ? "Contact: resuming the overlay" : "Contact: overlay stopped");
+        return resume;
+    }
+
+    /**
+     * @return the number of contacts the guard has reacted to
+     */
+    public long getContactCount()
+    {
+        return _contacts;
+    }
+
+    /**
+     * @return true while the robot holds after a contact, until the client
+     *         resumes or stops
+     */
+    public synchronized boolean isHolding()
+    {
+        return _holding;
+    }
+
+    private String describe(ObjectFrame motionFrame, ICondition condition)
+    {
+        String time = String.format("%tT.%<tL", System.currentTimeMillis());
+        int joint = _torqueConditions.indexOf(condition);
+        if (joint >= 0)
+            return String.format("%s external torque of joint %d %.1fNm > %.1fNm", time, joint + 1,
+                    _lbr.getExternalTorque().getTorqueValues()[joint], _maxJointTorque);
+        if (condition == _forceCondition)
+            return String.format("%s external force %.1fN > %.1fN", time,
+                    _lbr.getExternalForceTorque(motionFrame).getForce().length(), _maxForce);
+        return time + " " + condition;
+    }
+
+    @Override
+    public String handle(String[] args)
+    {
+        FRISessionSupervisor supervisor;
+        synchronized (this) {
+            supervisor = _supervisor;
+            if (args.length == 0)
+                return toString();
+
+            String command = args[0].toLowerCase();
+            if ((command.equals("resume") || command.equals("stop")) && args.length == 1) {
+                if (!_holding)
+                    throw new IllegalStateException("no contact to " + command + " from");
+                _resume = command.equals("resume");
+                notifyAll();
+                return null;
+            }
+            if (command.equals("reaction") && args.length == 2) {
+                if (args[1].equalsIgnoreCase("stop"))
+                    _reaction = Reaction.STOP;
+                else if (args[1].equalsIgnoreCase("compliant"))
+                    _reaction = Reaction.COMPLIANT_HOLD;
+                else
+                    throw new IllegalArgumentException("expected stop or compliant");
+                return toString();
+            }
+            if ((command.equals("torque") || command.equals("force")) && args.length == 2) {
+                double threshold = Double.parseDouble(args[1]);
+                if (!(threshold >= 0.))
+                    throw new IllegalArgumentException("negative threshold " + args[1]);
+                if (command.equals("torque"))
+                    _maxJointTorque = threshold;
+                else
+                    _maxForce = threshold;
+            }
+            else
+                throw new IllegalArgumentException("invalid arguments for contact");
+        }
+
+        // the break conditions of a running motion are fixed
+        if (supervisor != null) {
+            supervisor.restartOverlay();
+            supervisor.getEventLog().parameter("contact", toString());
+        }
+        _logger.info(toString());
+        return toString();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Contact guard: torque " + _maxJointTorque + "Nm | force " + _maxForce + "N | reaction " + _reaction
+                + (_holding ? " | holding" : "") + " | last " + (_lastEvent != null ? _lastEvent : "none");
+    }
+}
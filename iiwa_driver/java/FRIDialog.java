@@ -0,0 +1,230 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
+import com.kuka.roboticsAPI.uiModel.ApplicationDialogType;
+
+/**
+ * Start-up dialog of an FRI application, described as data: every option sets
+ * keys of an {@link FRIPreset} (<code>mode</code>, <code>controller</code>,
+ * <code>stiffness</code>, <code>damping</code>, <code>stiffness_trans</code>,
+ * ...), so that the dialogs and the presets file build the same preset.
+ *
+ * <pre>
+ * FRIDialog.values("Choose stiffness for actuators", "stiffness", "0", "20", "50").when("controller", "JOINT_IMPEDANCE")
+ * new FRIDialog("Choose Cartesian stiffness (trans/rot)").option("500/50", "stiffness_trans=500", "stiffness_rot=50")
+ * </pre>
+ *
+ * The dialogs of an application are shown in order by a {@link Selection}; a
+ * dialog is skipped if its conditions do not hold or if an earlier option
+ * already set its keys.
+ */
+public class FRIDialog
+{
+    private final String _title;
+    private final List<String> _labels = new ArrayList<String>();
+    private final List<String[]> _assignments = new ArrayList<String[]>();
+    private final List<String[]> _conditions = new ArrayList<String[]>();
+    private int _defaultOption;
+
+    public FRIDialog(String title)
+    {
+        _title = title;
+    }
+
+    /**
+     * @return a dialog whose options set one key to their label
+     */
+    public static FRIDialog values(String title, String key, String... values)
+    {
+        FRIDialog dialog = new FRIDialog(title);
+        for (String value : values)
+            dialog.option(value, key + "=" + value);
+        return dialog;
+    }
+
+    /**
+     * @return a dialog choosing the client command mode
+     */
+    public static FRIDialog modes(String title)
+    {
+        return modes(title, false);
+    }
+
+    /**
+     * @param cartesianPose
+     *            whether to offer the Cartesian pose overlay, see
+     *            {@link FRIApplicationConfig#setCartesianPose(FRIRateProfile)}
+     * @return a dialog choosing the client command mode
+     */
+    public static FRIDialog modes(String title, boolean cartesianPose)
+    {
+        FRIDialog dialog = new FRIDialog(title).option("Torque", "mode=" + ClientCommandMode.TORQUE)
+                .option("Position", "mode=" + ClientCommandMode.POSITION)
+                .option("Wrench", "mode=" + ClientCommandMode.WRENCH);
+        if (cartesianPose)
+            dialog.option("Cartesian pose", "mode=" + FRIApplicationConfig.CARTESIAN_POSE);
+        return dialog.byDefault(1);
+    }
+
+    /**
+     * Adds an option.
+     *
+     * @param label
+     *            the label of the button
+     * @param assignments
+     *            the keys it sets, as <code>key=value</code>
+     */
+    public FRIDialog option(String label, String... assignments)
+    {
+        for (String assignment : assignments)
+            if (assignment.indexOf('=') <= 0)
+                throw new IllegalArgumentException("expected key=value: " + assignment);
+        _labels.add(label);
+        _assignments.add(assignments);
+        return this;
+    }
+
+    /**
+     * Shows the dialog only if <code>key</code> has one of the values; the
+     * conditions of a dialog are combined.
+     */
+    public FRIDialog when(String key, String... values)
+    {
+        String[] condition = new String[values.length + 1];
+        condition[0] = key;
+        System.arraycopy(values, 0, condition, 1, values.length);
+        _conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * Sets the option taken on an invalid choice (default: the first one).
+     */
+    public FRIDialog byDefault(int option)
+    {
+        if (option < 0 || option >= _labels.size())
+            throw new IllegalArgumentException("no option " + option);
+        _defaultOption = option;
+        return this;
+    }
+
+    public String getTitle()
+    {
+        return _title;
+    }
+
+    private boolean applies(Properties selected)
+    {
+        for (String[] condition : _conditions) {
+            String value = Selection.get(selected, condition[0]);
+            boolean matches = false;
+            for (int i = 1; i < condition.length; i++)
+                matches |= condition[i].equals(value);
+            if (!matches)
+                return false;
+        }
+
+        // skipped if an earlier option already set its keys
+        for (String[] assignments : _assignments)
+            for (String assignment : assignments)
+                if (selected.getProperty(assignment.substring(0, assignment.indexOf('='))) == null)
+                    return true;
+        return false;
+    }
+
+    /**
+     * The dialogs of one start-up, shown in order: first up to the choice of
+     * the client command mode (which selects the FRI rate, so the session can
+     * be brought up while the other dialogs are shown), then the rest.
+     */
+    public static class Selection
+    {
+        private final List<FRIDialog> _dialogs;
+        private final RoboticsAPIApplication _app;
+        private final String _label;
+        private final Properties _selected = new Properties();
+        private int _next;
+
+        /**
+         * @param dialogs
+         *            the dialogs, in order
+         * @param app
+         *            the application showing them
+         * @param label
+         *            prefix of the titles (e.g. the robot name), or ""
+         */
+        public Selection(List<FRIDialog> dialogs, RoboticsAPIApplication app, String label)
+        {
+            _dialogs = dialogs;
+            _app = app;
+            _label = label;
+        }
+
+        /**
+         * @return the selected value, with the controller defaulting to the
+         *         one required by the mode
+         */
+        private static String get(Properties selected, String key)
+        {
+            String value = selected.getProperty(key);
+            if (value == null && key.equals("mode"))
+                return ClientCommandMode.POSITION.name();
+            if (value == null && key.equals("controller"))
+                return FRIPreset.defaultController(ClientCommandMode.valueOf(get(selected, "mode"))).name();
+            return value;
+        }
+
+        /**
+         * Shows the dialogs up to the one choosing the mode.
+         *
+         * @return the chosen client command mode (position if no dialog sets
+         *         it)
+         */
+        public ClientCommandMode chooseMode()
+        {
+            while (_next < _dialogs.size() && _selected.getProperty("mode") == null)
+                show(_dialogs.get(_next++));
+            return ClientCommandMode.valueOf(get(_selected, "mode"));
+        }
+
+        /**
+         * Shows the remaining dialogs.
+         *
+         * @return the preset built from the chosen options
+         * @throws IllegalArgumentException
+         *             if the options do not build a valid preset
+         */
+        public FRIPreset finish()
+        {
+            chooseMode();
+            while (_next < _dialogs.size())
+                show(_dialogs.get(_next++));
+            return FRIPreset.create("dialogs", _selected, "");
+        }
+
+        private void show(FRIDialog dialog)
+        {
+            if (!dialog.applies(_selected))
+                return;
+
+            int choice = _app.getApplicationUI().displayModalDialog(ApplicationDialogType.QUESTION, _label + dialog._title,
+                    dialog._labels.toArray(new String[dialog._labels.size()]));
+            if (choice < 0 || choice >= dialog._labels.size()) {
+                choice = dialog._defaultOption;
+                _app.getLogger().warn(_label + dialog._title + ": invalid choice, using '" + dialog._labels.get(choice) + "'");
+            }
+            else
+                _app.getLogger().info(_label + dialog._title + ": '" + dialog._labels.get(choice) + "' chosen");
+
+            for (String assignment : dialog._assignments.get(choice)) {
+                int eq = assignment.indexOf('=');
+                _selected.setProperty(assignment.substring(0, eq), assignment.substring(eq + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Geometric constraints of the overlay, enforced on the controller by the
+ * {@link FRIEnvelopeGuard}: joint sub-ranges, a Cartesian box and half-spaces
+ * the motion frame has to stay in, and vertical keep-out cylinders around
+ * fixtures. Positions are those of the motion frame (tool or flange) in the
+ * robot base, in mm; joint angles are in degrees.
+ *
+ * Loaded from a properties file (see <code>config/fri_envelope.properties</code>):
+ *
+ * <pre>
+ * joint.1 = -120 120                  sub-range of joint A1 [deg]
+ * box = -800 -800 0 800 800 1200      x, y, z min, then x, y, z max [mm]
+ * plane.table = 0 0 1 50              stays where n.p &gt;= d: normal x, y, z, d [mm]
+ * cylinder.fixture = 500 0 80 0 400   keep out: center x, y, radius, z min, z max [mm]
+ * </pre>
+ *
+ * The check does not allocate, so it can run every send period.
+ */
+public class FRIEnvelope
+{
+    private final List<String> _names = new ArrayList<String>();
+
+    // joint: index, min, max [rad]
+    private final List<double[]> _joints = new ArrayList<double[]>();
+    // box: x, y, z min, x, y, z max [mm]
+    private final List<double[]> _boxes = new ArrayList<double[]>();
+    // plane: unit normal x, y, z, d [mm]
+    private final List<double[]> _planes = new ArrayList<double[]>();
+    // cylinder: center x, y, radius, z min, z max [mm]
+    private final List<double[]> _cylinders = new ArrayList<double[]>();
+    private final List<String> _jointNames = new ArrayList<String>();
+    private final List<String> _boxNames = new ArrayList<String>();
+    private final List<String> _planeNames = new ArrayList<String>();
+    private final List<String> _cylinderNames = new ArrayList<String>();
+
+    /**
+     * Keeps a joint in a sub-range of its limits.
+     *
+     * @param joint
+     *            the joint, from 1
+     */
+    public FRIEnvelope joint(int joint, double minDeg, double maxDeg)
+    {
+        if (joint < 1 || !(minDeg < maxDeg))
+            throw new IllegalArgumentException("invalid range of joint " + joint + ": " + minDeg + " " + maxDeg);
+        _joints.add(new double[] { joint - 1, Math.toRadians(minDeg), Math.toRadians(maxDeg) });
+        _jointNames.add(add("joint A" + joint + " [" + minDeg + ", " + maxDeg + "]"));
+        return this;
+    }
+
+    /**
+     * Keeps the motion frame in an axis-aligned box of the robot base.
+     */
+    public FRIEnvelope box(double xMin, double yMin, double zMin, double xMax, double yMax, double zMax)
+    {
+        if (!(xMin < xMax && yMin < yMax && zMin < zMax))
+            throw new IllegalArgumentException("empty box");
+        _boxes.add(new double[] { xMin, yMin, zMin, xMax, yMax, zMax });
+        _boxNames.add(add("box"));
+        return this;
+    }
+
+    /**
+     * Keeps the motion frame on the side of a plane its normal points to.
+     *
+     * @param d
+     *            distance of the plane from the origin along the normal [mm]
+     */
+    public FRIEnvelope plane(String name, double nx, double ny, double nz, double d)
+    {
+        double norm = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (!(norm > 0.))
+            throw new IllegalArgumentException("plane " + name + " without normal");
+        _planes.add(new double[] { nx / norm, ny / norm, nz / norm, d / norm });
+        _planeNames.add(add("plane " + name));
+        return this;
+    }
+
+    /**
+     * Keeps the motion frame out of a vertical cylinder of the robot base.
+     */
+    public FRIEnvelope keepOutCylinder(String name, double x, double y, double radius, double zMin, double zMax)
+    {
+        if (!(radius > 0. && zMin < zMax))
+            throw new IllegalArgumentException("empty cylinder " + name);
+        _cylinders.add(new double[] { x, y, radius, zMin, zMax });
+        _cylinderNames.add(add("cylinder " + name));
+        return this;
+    }
+
+    private String add(String name)
+    {
+        _names.add(name);
+        return name;
+    }
+
+    public boolean isEmpty()
+    {
+        return _names.isEmpty();
+    }
+
+    /**
+     * Checks the constraints against a robot.
+     *
+     * @param jointCount
+     *            the number of joints of the robot
+     * @throws IllegalArgumentException
+     *             if a constraint names a joint the robot does not have
+     */
+    public void validate(int jointCount)
+    {
+        for (int i = 0; i < _joints.size(); i++) {
+            int joint = (int) _joints.get(i)[0];
+            if (joint >= jointCount)
+                throw new IllegalArgumentException(_jointNames.get(i) + ": the robot has " + jointCount + " joints");
+        }
+    }
+
+    /**
+     * Loads the constraints of a properties file (see the keys above).
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalArgumentException
+     *             if a constraint is invalid
+     */
+    public static FRIEnvelope load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+
+        FRIEnvelope envelope = new FRIEnvelope();
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            String name = key.indexOf('.') < 0 ? "" : key.substring(key.indexOf('.') + 1);
+            if (key.startsWith("joint.")) {
+                double[] v = values(properties, key, 2);
+                envelope.joint(Integer.parseInt(name), v[0], v[1]);
+            }
+            else if (key.equals("box")) {
+                double[] v = values(properties, key, 6);
+                envelope.box(v[0], v[1], v[2], v[3], v[4], v[5]);
+            }
+            else if (key.startsWith("plane.")) {
+                double[] v = values(properties, key, 4);
+                envelope.plane(name, v[0], v[1], v[2], v[3]);
+            }
+            else if (key.startsWith("cylinder.")) {
+                double[] v = values(properties, key, 5);
+                envelope.keepOutCylinder(name, v[0], v[1], v[2], v[3], v[4]);
+            }
+            else
+                throw new IllegalArgumentException("unknown constraint " + key);
+        }
+        return envelope;
+    }
+
+    /**
+     * Loads the envelope of an application.
+     *
+     * @return the constraints of the file, none if it does not exist
+     * @throws IllegalStateException
+     *             if the file cannot be read or is invalid: the overlay does
+     *             not run without its envelope
+     */
+    public static FRIEnvelope resolve(File file)
+    {
+        if (file == null || !file.exists())
+            return new FRIEnvelope();
+        try {
+            return load(file);
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException("Cannot read envelope file " + file.getPath() + ": " + e.getLocalizedMessage());
+        }
+        catch (final IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid envelope in " + file.getPath() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private static double[] values(Properties properties, String key, int count)
+    {
+        String[] tokens = properties.getProperty(key).trim().split("\\s+");
+        if (tokens.length != count)
+            throw new IllegalArgumentException(key + ": expected " + count + " values");
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = Double.parseDouble(tokens[i]);
+        return values;
+    }
+
+    /**
+     * @param joints
+     *            joint positions [rad], at least as many as the envelope was
+     *            validated for
+     * @param x
+     *            position of the motion frame in the robot base [mm]
+     * @return the first constraint violated, or null if all hold
+     */
+    public String check(double[] joints, double x, double y, double z)
+    {
+        for (int i = 0; i < _joints.size(); i++) {
+            double[] c = _joints.get(i);
+            int joint = (int) c[0];
+            if (joints[joint] < c[1] || joints[joint] > c[2])
+                return _jointNames.get(i);
+        }
+        for (int i = 0; i < _boxes.size(); i++) {
+            double[] c = _boxes.get(i);
+            if (x < c[0] || y < c[1] || z < c[2] || x > c[3] || y > c[4] || z > c[5])
+                return _boxNames.get(i);
+        }
+        for (int i = 0; i < _planes.size(); i++) {
+            double[] c = _planes.get(i);
+            if (c[0] * x + c[1] * y + c[2] * z < c[3])
+                return _planeNames.get(i);
+        }
+        for (int i = 0; i < _cylinders.size(); i++) {
+            double[] c = _cylinders.get(i);
+            double dx = x - c[0], dy = y - c[1];
+            if (z >= c[3] && z <= c[4] && dx * dx + dy * dy < c[2] * c[2])
+                return _cylinderNames.get(i);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isEmpty())
+            return "Envelope: none";
+        StringBuilder s = new StringBuilder("Envelope:");
+        for (int i = 0; i < _names.size(); i++)
+            s.append(i > 0 ? "," : "").append(" ").append(_names.get(i));
+        return s.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package application;
+
+import com.kuka.roboticsAPI.deviceModel.JointPosition;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Enforces an {@link FRIEnvelope} on the overlay of a
+ * {@link FRISessionSupervisor}: every send period, the joint positions and the
+ * pose of the motion frame commanded to the robot (the overlay applied) are
+ * checked against the constraints. On a violation, the overlay is suspended
+ * and the robot holds its position, without a round trip to the client, until
+ * the client resumes. The guard is armed again once the commanded position is
+ * back inside the envelope, so the client can move out of a violation.
+ *
+ * The guard is reactive, not a clamp: it sees a command once the robot has
+ * applied it, and stops the robot up to one send period later, so the robot
+ * ends slightly outside the envelope, by the distance it covers in that period
+ * plus its braking distance. Constraints should keep that margin to the
+ * fixtures.
+ *
+ * Handler of the <code>envelope</code> command of the {@link FRICommandServer}:
+ *
+ * <pre>
+ * envelope                   constraints, status and last violation
+ * envelope resume            restart the overlay after a violation
+ * </pre>
+ */
+public class FRIEnvelopeGuard extends FRIPeriodicTask implements FRICommandServer.Handler
+{
+    private final LBR _lbr;
+    private final FRIEnvelope _envelope;
+    private final ITaskLogger _logger;
+    private final double[] _joints;
+    private FRISessionSupervisor _supervisor;
+
+    // state, written by the guard thread
+    private volatile boolean _holding;
+    private volatile String _violation;
+    private volatile long _violations;
+    private boolean _armed;
+
+    /**
+     * @param lbr
+     *            the robot
+     * @param envelope
+     *            the constraints
+     * @param logger
+     *            logger
+     * @throws IllegalStateException
+     *             if the envelope does not fit the robot
+     */
+    public FRIEnvelopeGuard(LBR lbr, FRIEnvelope envelope, ITaskLogger logger)
+    {
+        super("FRIEnvelopeGuard");
+        _lbr = lbr;
+        _envelope = envelope;
+        _logger = logger;
+        _joints = new double[lbr.getJointCount()];
+        try {
+            envelope.validate(_joints.length);
+        }
+        catch (final IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid envelope for " + lbr.getName() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Starts checking the overlay at the send period of the session; does
+     * nothing if the envelope is empty.
+     */
+    public synchronized void start(FRISessionSupervisor supervisor)
+    {
+        if (isRunning() || _envelope.isEmpty())
+            return;
+        _supervisor = supervisor;
+        _armed = true;
+        _logger.info(_envelope.toString());
+        startPeriodic(supervisor.getConfiguration().getSendPeriodMilliSec() * 1000000L);
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        if (_holding) {
+            if (_supervisor.isSuspended())
+                return;
+            // resumed by another component
+            _holding = false;
+        }
+        if (_supervisor.isSuspended() || _supervisor.getClientCommandMode() == null)
+            return;
+
+        JointPosition commanded = _lbr.getCommandedJointPosition();
+        for (int i = 0; i < _joints.length; i++)
+            _joints[i] = commanded.get(i);
+        ObjectFrame motionFrame = _supervisor.getMotionFrame();
+        Frame pose = _lbr.getCommandedCartesianPosition(motionFrame != null ? motionFrame : _lbr.getFlange(), _lbr.getRootFrame());
+        String violation = _envelope.check(_joints, pose.getX(), pose.getY(), pose.getZ());
+
+        if (violation == null) {
+            if (!_armed)
+                _logger.info("[FRI envelope] back inside, guard armed");
+            _armed = true;
+            return;
+        }
+        if (!_armed)
+            return;
+
+        try {
+            _supervisor.suspendOverlay();
+        }
+        catch (final IllegalStateException e) {
+            // e.g. a trajectory or a contact hold: the robot is not overlaid
+            return;
+        }
+        _holding = true;
+        _armed = false;
+        _violation = violation;
+        _violations++;
+        _logger.warn("[FRI envelope] " + violation + " violated at x " + Math.round(pose.getX()) + " y " + Math.round(pose.getY()) + " z "
+                + Math.round(pose.getZ()) + ": holding until 'envelope resume'");
+        _supervisor.getEventLog().envelope(violation);
+    }
+
+    @Override
+    public String handle(String[] args)
+    {
+        if (args.length == 0)
+            return toString();
+        if (args.length != 1 || !args[0].equalsIgnoreCase("resume"))
+            throw new IllegalArgumentException("invalid arguments for envelope");
+        if (!_holding)
+            throw new IllegalStateException("no violation to resume from");
+        _holding = false;
+        _supervisor.resumeOverlay();
+        _logger.info("[FRI envelope] overlay resumed after " + _violation);
+        return toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        if (_envelope.isEmpty())
+            return _envelope.toString();
+        return _envelope + " | " + (_holding ? "holding" : "running") + " | violations " + _violations
+                + (_violation != null ? " | last " + _violation : "");
+    }
+}
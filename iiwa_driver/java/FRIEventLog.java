@@ -0,0 +1,321 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConnectionQuality;
+import com.kuka.connectivity.fastRobotInterface.FRISessionState;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Asynchronous structured event log of an FRI application: session state and
+ * quality changes, connections, reconnections and failovers to a standby client,
+ * parameter updates, contacts, link fallbacks and envelope violations.
+ *
+ * Events are written into a preallocated ring buffer of typed fields, without
+ * formatting or allocation, so they can be emitted from the control path
+ * (e.g. every send period). A background writer drains the buffer every
+ * {@link #WRITE_PERIOD_MILLISEC} and appends the events to a CSV file, or logs
+ * them if there is no file. When the buffer is full, new events are dropped
+ * and counted.
+ *
+ * The time of an event is the {@link FRIClock} in seconds since the epoch with
+ * microseconds, as in the ROS logs of the driver:
+ *
+ * <pre>
+ * time,robot,event,from,to,value,detail
+ * 1700000000.123456,LBR_iiwa_14_R820_1,QUALITY,GOOD,FAIR,,
+ * </pre>
+ */
+public class FRIEventLog extends FRIPeriodicTask
+{
+    public enum Event
+    {
+        SESSION_STATE, QUALITY, CONNECTED, DISCONNECTED, RECONNECT, FAILOVER, PARAMETER, CONTACT, LINK, ENVELOPE
+    }
+
+    public static final long WRITE_PERIOD_MILLISEC = 100;
+
+    /** source of a disabled log, which drops all events */
+    public static final Source NONE = new FRIEventLog(0, null, null).source("");
+
+    private static final Event[] EVENTS = Event.values();
+
+    private final ITaskLogger _logger;
+    private final File _file;
+    private final int _capacity;
+
+    // ring buffer, written by the sources
+    private final long[] _nanos;
+    private final byte[] _event;
+    private final Source[] _source;
+    private final Object[] _from;
+    private final Object[] _to;
+    private final double[] _value;
+    private final String[] _detail;
+    private int _head;
+    private int _size;
+    private long _dropped;
+
+    // copy drained by the writer
+    private final long[] _outNanos;
+    private final byte[] _outEvent;
+    private final Source[] _outSource;
+    private final Object[] _outFrom;
+    private final Object[] _outTo;
+    private final double[] _outValue;
+    private final String[] _outDetail;
+
+    private PrintWriter _out;
+
+    /**
+     * The emitting side of the log for one robot; the typed methods do not
+     * allocate.
+     */
+    public class Source
+    {
+        private final String _name;
+
+        private Source(String name)
+        {
+            _name = name;
+        }
+
+        public void sessionState(FRISessionState from, FRISessionState to)
+        {
+            emit(this, Event.SESSION_STATE, from, to, Double.NaN, null);
+        }
+
+        public void quality(FRIConnectionQuality from, FRIConnectionQuality to)
+        {
+            emit(this, Event.QUALITY, from, to, Double.NaN, null);
+        }
+
+        public void connected(String detail)
+        {
+            emit(this, Event.CONNECTED, null, null, Double.NaN, detail);
+        }
+
+        public void disconnected(String detail)
+        {
+            emit(this, Event.DISCONNECTED, null, null, Double.NaN, detail);
+        }
+
+        /**
+         * @param attempt
+         *            reconnection attempt, starting at 1
+         * @param connected
+         *            whether the attempt succeeded
+         */
+        public void reconnect(int attempt, boolean connected)
+        {
+            emit(this, Event.RECONNECT, null, connected ? Boolean.TRUE : Boolean.FALSE, attempt, null);
+        }
+
+        /**
+         * @param from
+         *            the client that was disconnected
+         * @param to
+         *            the client the next session is created to
+         */
+        public void failover(String from, String to)
+        {
+            emit(this, Event.FAILOVER, from, to, Double.NaN, null);
+        }
+
+        public void parameter(String name, double value)
+        {
+            emit(this, Event.PARAMETER, null, null, value, name);
+        }
+
+        /**
+         * @param name
+         *            the parameter
+         * @param value
+         *            its new value, written with toString() by the writer
+         */
+        public void parameter(String name, Object value)
+        {
+            emit(this, Event.PARAMETER, null, value, Double.NaN, name);
+        }
+
+        public void contact(String detail)
+        {
+            emit(this, Event.CONTACT, null, null, Double.NaN, detail);
+        }
+
+        /**
+         * @param constraint
+         *            the constraint of the envelope the overlay violated
+         */
+        public void envelope(String constraint)
+        {
+            emit(this, Event.ENVELOPE, null, null, Double.NaN, constraint);
+        }
+
+        /**
+         * @param from
+         *            the previous fallback step
+         * @param to
+         *            the new fallback step (0: none)
+         * @param detail
+         *            the steps taken or undone
+         */
+        public void link(int from, int to, String detail)
+        {
+            emit(this, Event.LINK, Integer.valueOf(from), Integer.valueOf(to), Double.NaN, detail);
+        }
+    }
+
+    /**
+     * @param capacity
+     *            events buffered between two writes (0: disabled)
+     * @param file
+     *            file the events are appended to, or null to log them
+     * @param logger
+     *            logger
+     */
+    public FRIEventLog(int capacity, File file, ITaskLogger logger)
+    {
+        super("FRIEventLog");
+        _capacity = capacity;
+        _file = file;
+        _logger = logger;
+        _nanos = new long[capacity];
+        _event = new byte[capacity];
+        _source = new Source[capacity];
+        _from = new Object[capacity];
+        _to = new Object[capacity];
+        _value = new double[capacity];
+        _detail = new String[capacity];
+        _outNanos = new long[capacity];
+        _outEvent = new byte[capacity];
+        _outSource = new Source[capacity];
+        _outFrom = new Object[capacity];
+        _outTo = new Object[capacity];
+        _outValue = new double[capacity];
+        _outDetail = new String[capacity];
+    }
+
+    /**
+     * @param name
+     *            the robot the events are about
+     * @return the source emitting events of the robot
+     */
+    public Source source(String name)
+    {
+        return new Source(name);
+    }
+
+    /**
+     * Opens the file and starts the writer; does nothing if the log is
+     * disabled.
+     */
+    public synchronized void start()
+    {
+        if (isRunning() || _capacity == 0)
+            return;
+        if (_file != null) {
+            try {
+                boolean header = !_file.exists();
+                _out = new PrintWriter(new BufferedWriter(new FileWriter(_file, true)));
+                if (header)
+                    _out.println("time,robot,event,from,to,value,detail");
+            }
+            catch (final IOException e) {
+                _logger.warn("Cannot open FRI event log, logging the events instead: " + e.getLocalizedMessage());
+            }
+        }
+        startPeriodic(WRITE_PERIOD_MILLISEC * 1000000L);
+    }
+
+    private void emit(Source source, Event event, Object from, Object to, double value, String detail)
+    {
+        long nanos = System.nanoTime();
+        synchronized (this) {
+            if (_size == _capacity) {
+                _dropped++;
+                return;
+            }
+            int k = (_head + _size) % _capacity;
+            _nanos[k] = nanos;
+            _event[k] = (byte) event.ordinal();
+            _source[k] = source;
+            _from[k] = from;
+            _to[k] = to;
+            _value[k] = value;
+            _detail[k] = detail;
+            _size++;
+        }
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        int count;
+        long dropped;
+        synchronized (this) {
+            count = _size;
+            for (int i = 0; i < count; i++) {
+                int k = (_head + i) % _capacity;
+                _outNanos[i] = _nanos[k];
+                _outEvent[i] = _event[k];
+                _outSource[i] = _source[k];
+                _outFrom[i] = _from[k];
+                _outTo[i] = _to[k];
+                _outValue[i] = _value[k];
+                _outDetail[i] = _detail[k];
+                _from[k] = null;
+                _to[k] = null;
+                _detail[k] = null;
+            }
+            _head = (_head + count) % _capacity;
+            _size = 0;
+            dropped = _dropped;
+            _dropped = 0;
+        }
+
+        for (int i = 0; i < count; i++) {
+            String line = format(i);
+            if (_out != null)
+                _out.println(line);
+            else
+                _logger.info("[FRI event] " + line);
+        }
+        if (dropped > 0)
+            _logger.warn("[FRI event] " + dropped + " events dropped, the buffer is full");
+        if (_out != null && count > 0)
+            _out.flush();
+    }
+
+    private String format(int i)
+    {
+        long micros = FRIClock.epochNanos(_outNanos[i]) / 1000L;
+        return String.format("%d.%06d,%s,%s,%s,%s,%s,%s", micros / 1000000L, micros % 1000000L, csv(_outSource[i]._name), EVENTS[_outEvent[i]],
+                csv(_outFrom[i]), csv(_outTo[i]), Double.isNaN(_outValue[i]) ? "" : String.valueOf(_outValue[i]), csv(_outDetail[i]));
+    }
+
+    private static String csv(Object value)
+    {
+        if (value == null)
+            return "";
+        String s = value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0)
+            return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    protected void finish()
+    {
+        // the events emitted since the last write
+        cycle(System.nanoTime());
+        if (_out != null) {
+            _out.close();
+            _out = null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
+import com.kuka.roboticsAPI.controllerModel.Controller;
+import com.kuka.roboticsAPI.ioModel.AbstractIOGroup;
+import com.kuka.roboticsAPI.ioModel.IOTypes;
+
+/**
+ * I/O group of a gripper whose signals are mapped into the FRI session: the
+ * outputs are written by the client in the command message and the inputs are
+ * reported in the monitoring message, in the same cycle as the joint values.
+ *
+ * The group and its signals have to be configured in WorkVisual with the same
+ * names and types: a boolean close output, an unsigned position output, a
+ * boolean closed input and an unsigned position input, each optional (empty
+ * name). On the client, the signals are named
+ * <code>&lt;group&gt;.&lt;signal&gt;</code> (see <code>gripper/</code> in
+ * <code>iiwa_driver/config/iiwa.yaml</code>).
+ */
+public class FRIGripperIO extends AbstractIOGroup
+{
+    private final String _groupName;
+    private final String _closeOutput;
+    private final String _positionOutput;
+    private final String _closedInput;
+    private final String _positionInput;
+
+    /**
+     * @param controller
+     *            the controller of the I/O group
+     * @param groupName
+     *            name of the I/O group
+     * @param closeOutput
+     *            boolean output closing the gripper, or ""
+     * @param positionOutput
+     *            unsigned output of the target position, or ""
+     * @param closedInput
+     *            boolean input reporting a closed gripper, or ""
+     * @param positionInput
+     *            unsigned input of the actual position, or ""
+     * @param positionBits
+     *            width of the position signals
+     */
+    public FRIGripperIO(Controller controller, String groupName, String closeOutput, String positionOutput, String closedInput,
+            String positionInput, int positionBits)
+    {
+        super(controller, groupName);
+        _groupName = groupName;
+        _closeOutput = closeOutput;
+        _positionOutput = positionOutput;
+        _closedInput = closedInput;
+        _positionInput = positionInput;
+
+        if (!_closeOutput.isEmpty())
+            addDigitalOutput(_closeOutput, IOTypes.BOOLEAN, 1);
+        if (!_positionOutput.isEmpty())
+            addDigitalOutput(_positionOutput, IOTypes.UNSIGNED_INTEGER, positionBits);
+        if (!_closedInput.isEmpty())
+            addInput(_closedInput, IOTypes.BOOLEAN, 1);
+        if (!_positionInput.isEmpty())
+            addInput(_positionInput, IOTypes.UNSIGNED_INTEGER, positionBits);
+    }
+
+    /**
+     * Maps the signals into an FRI configuration. Has to be called before the
+     * FRISession is created.
+     *
+     * @param friConfiguration
+     *            the configuration to modify
+     */
+    public void register(FRIConfiguration friConfiguration)
+    {
+        if (!_closeOutput.isEmpty())
+            friConfiguration.registerIO(getOutput(_closeOutput));
+        if (!_positionOutput.isEmpty())
+            friConfiguration.registerIO(getOutput(_positionOutput));
+        if (!_closedInput.isEmpty())
+            friConfiguration.registerIO(getInput(_closedInput));
+        if (!_positionInput.isEmpty())
+            friConfiguration.registerIO(getInput(_positionInput));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Gripper I/O over FRI: group '" + _groupName + "' | close '" + _closeOutput + "' | position '" + _positionOutput
+                + "' | closed '" + _closedInput + "' | actual position '" + _positionInput + "'";
+    }
+}
@@ -0,0 +1,114 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated log-linear histogram (in the style of HdrHistogram) for
+ * non-negative values in microseconds. Values below 32us are counted exactly;
+ * above, every power of two is split into 16 buckets, i.e. the relative error
+ * is below 1/16. Values above ~16.7s are counted in the last bucket.
+ *
+ * Recording does not allocate; the histogram is not thread-safe.
+ */
+public class FRIHistogram
+{
+    private static final int SUB_BUCKETS = 32;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final long MAX_VALUE = (1L << 24) - 1;
+
+    private final long[] _counts;
+    private long _totalCount;
+    private long _sum;
+    private long _max;
+
+    public FRIHistogram()
+    {
+        _counts = new long[bucketIndex(MAX_VALUE) + 1];
+    }
+
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - 4;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((value >> shift) - HALF_SUB_BUCKETS);
+    }
+
+    private static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF_SUB_BUCKETS + 1;
+        long subBucket = k % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void recordMicros(long value)
+    {
+        if (value < 0)
+            value = 0;
+        _counts[bucketIndex(Math.min(value, MAX_VALUE))]++;
+        _totalCount++;
+        _sum += value;
+        if (value > _max)
+            _max = value;
+    }
+
+    public void recordMilliSec(double value)
+    {
+        recordMicros((long) (value * 1000.));
+    }
+
+    public long getCount()
+    {
+        return _totalCount;
+    }
+
+    public double getMaxMilliSec()
+    {
+        return _max / 1000.;
+    }
+
+    public double getMeanMilliSec()
+    {
+        return _totalCount == 0 ? 0. : _sum / (1000. * _totalCount);
+    }
+
+    /**
+     * @param percentile
+     *            in [0, 100]
+     * @return the upper bound (in ms) of the bucket holding the percentile
+     */
+    public double getPercentileMilliSec(double percentile)
+    {
+        if (_totalCount == 0)
+            return 0.;
+        long rank = (long) Math.ceil(percentile / 100. * _totalCount);
+        rank = Math.max(1, Math.min(rank, _totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < _counts.length; i++) {
+            cumulative += _counts[i];
+            if (cumulative >= rank)
+                return Math.min(bucketUpperBound(i), _max) / 1000.;
+        }
+        return getMaxMilliSec();
+    }
+
+    public void reset()
+    {
+        Arrays.fill(_counts, 0);
+        _totalCount = 0;
+        _sum = 0;
+        _max = 0;
+    }
+
+    /**
+     * @return mean, p50, p99, p99.9 and max in ms
+     */
+    public String summary()
+    {
+        return String.format("mean %.3f | p50 %.3f | p99 %.3f | p99.9 %.3f | max %.3f", getMeanMilliSec(),
+                getPercentileMilliSec(50.), getPercentileMilliSec(99.), getPercentileMilliSec(99.9), getMaxMilliSec());
+    }
+}
@@ -0,0 +1,234 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.roboticsAPI.geometricModel.CartDOF;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.CartesianImpedanceControlMode;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.IMotionControlMode;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.JointImpedanceControlMode;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.PositionControlMode;
+
+/**
+ * Immutable controller and impedance parameters of the PositionHold of an FRI
+ * application, from which the control mode is built.
+ */
+public class FRIImpedance
+{
+    public enum Controller
+    {
+        POSITION, JOINT_IMPEDANCE, CARTESIAN_IMPEDANCE
+    }
+
+    private final Controller _controller;
+    private final double _stiffness;
+    private final double _damping;
+    private final double _stiffnessTrans;
+    private final double _stiffnessRot;
+    private final double _dampingTrans;
+    private final double _dampingRot;
+    private final double _nullSpaceDamping;
+
+    private FRIImpedance(Controller controller, double stiffness, double damping, double stiffnessTrans, double stiffnessRot,
+            double dampingTrans, double dampingRot, double nullSpaceDamping)
+    {
+        _controller = controller;
+        _stiffness = stiffness;
+        _damping = damping;
+        _stiffnessTrans = stiffnessTrans;
+        _stiffnessRot = stiffnessRot;
+        _dampingTrans = dampingTrans;
+        _dampingRot = dampingRot;
+        _nullSpaceDamping = nullSpaceDamping;
+    }
+
+    public static FRIImpedance position()
+    {
+        return new FRIImpedance(Controller.POSITION, 500., 0.7, 2000., 200., 0.7, 0.7, 0.7);
+    }
+
+    public static FRIImpedance joint(double stiffness, double damping)
+    {
+        return new FRIImpedance(Controller.JOINT_IMPEDANCE, stiffness, damping, 2000., 200., 0.7, 0.7, 0.7);
+    }
+
+    public static FRIImpedance cartesian(double stiffnessTrans, double stiffnessRot, double dampingTrans, double dampingRot, double nullSpaceDamping)
+    {
+        return new FRIImpedance(Controller.CARTESIAN_IMPEDANCE, 500., 0.7, stiffnessTrans, stiffnessRot, dampingTrans, dampingRot, nullSpaceDamping);
+    }
+
+    /**
+     * Parses the arguments of an <code>impedance</code> command:
+     *
+     * <pre>
+     * position
+     * joint &lt;stiffness&gt; [&lt;damping&gt;]
+     * cartesian &lt;stiffness_trans&gt; &lt;stiffness_rot&gt; [&lt;damping_trans&gt; &lt;damping_rot&gt; [&lt;nullspace_damping&gt;]]
+     * </pre>
+     *
+     * Omitted dampings are taken from <code>current</code>. The dampings are
+     * checked against the ranges of Sunrise, so that a retune fails here and
+     * not in the running motion: 0 to 1 for the joints, 0.1 to 1 in Cartesian
+     * space and 0.3 to 1 for the null space.
+     *
+     * @param args
+     *            the arguments
+     * @param current
+     *            the current impedance, or null for the default dampings
+     * @return the impedance
+     * @throws IllegalArgumentException
+     *             if the arguments are invalid
+     */
+    public static FRIImpedance parse(String[] args, FRIImpedance current)
+    {
+        if (current == null)
+            current = position();
+        if (args.length == 0)
+            throw new IllegalArgumentException("expected position, joint or cartesian");
+
+        String controller = args[0].toLowerCase();
+        if (controller.equals("position") && args.length == 1)
+            return position();
+        if (controller.equals("joint") && args.length >= 2 && args.length <= 3)
+            return joint(parseNonNegative(args[1]), args.length > 2 ? parseDamping(args[2], 0.) : current._damping);
+        if (controller.equals("cartesian") && args.length >= 3 && args.length <= 6 && args.length != 4)
+            return cartesian(parseNonNegative(args[1]), parseNonNegative(args[2]),
+                    args.length > 3 ? parseDamping(args[3], 0.1) : current._dampingTrans,
+                    args.length > 3 ? parseDamping(args[4], 0.1) : current._dampingRot,
+                    args.length > 5 ? parseDamping(args[5], 0.3) : current._nullSpaceDamping);
+        throw new IllegalArgumentException("invalid arguments for " + args[0]);
+    }
+
+    private static double parseDamping(String value, double min)
+    {
+        double d = Double.parseDouble(value);
+        if (!(d >= min && d <= 1.))
+            throw new IllegalArgumentException("damping " + value + " out of [" + min + ", 1]");
+        return d;
+    }
+
+    private static double parseNonNegative(String value)
+    {
+        double d = Double.parseDouble(value);
+        if (!(d >= 0.))
+            throw new IllegalArgumentException("negative value " + value);
+        return d;
+    }
+
+    public Controller getController()
+    {
+        return _controller;
+    }
+
+    public double getStiffness()
+    {
+        return _stiffness;
+    }
+
+    public double getStiffnessTrans()
+    {
+        return _stiffnessTrans;
+    }
+
+    public double getStiffnessRot()
+    {
+        return _stiffnessRot;
+    }
+
+    /**
+     * Linear interpolation of all parameters; the controller is the one of
+     * <code>to</code>.
+     *
+     * @param to
+     *            the target impedance
+     * @param s
+     *            interpolation factor in [0, 1]
+     * @return the interpolated impedance
+     */
+    public FRIImpedance interpolate(FRIImpedance to, double s)
+    {
+        return new FRIImpedance(to._controller,
+                lerp(_stiffness, to._stiffness, s),
+                lerp(_damping, to._damping, s),
+                lerp(_stiffnessTrans, to._stiffnessTrans, s),
+                lerp(_stiffnessRot, to._stiffnessRot, s),
+                lerp(_dampingTrans, to._dampingTrans, s),
+                lerp(_dampingRot, to._dampingRot, s),
+                lerp(_nullSpaceDamping, to._nullSpaceDamping, s));
+    }
+
+    private static double lerp(double a, double b, double s)
+    {
+        return a + (b - a) * s;
+    }
+
+    /**
+     * Creates the control mode of the PositionHold. As in the dialogs, the
+     * joint damping is set to 0 in torque mode.
+     *
+     * @param jointCount
+     *            number of joints of the robot
+     * @param mode
+     *            the client command mode of the overlay
+     * @return the control mode
+     */
+    public IMotionControlMode createControlMode(int jointCount, ClientCommandMode mode)
+    {
+        return createControlMode(jointCount, mode, 0.);
+    }
+
+    /**
+     * Creates the control mode of the PositionHold with a lower bound of the
+     * dampings, which also applies in torque mode.
+     *
+     * @param jointCount
+     *            number of joints of the robot
+     * @param mode
+     *            the client command mode of the overlay
+     * @param dampingFloor
+     *            the lowest damping
+     * @return the control mode
+     */
+    public IMotionControlMode createControlMode(int jointCount, ClientCommandMode mode, double dampingFloor)
+    {
+        if (_controller == Controller.POSITION)
+            return new PositionControlMode();
+
+        if (_controller == Controller.JOINT_IMPEDANCE) {
+            JointImpedanceControlMode joint_imp_controller = new JointImpedanceControlMode(jointCount);
+            joint_imp_controller.setStiffnessForAllJoints(_stiffness);
+            joint_imp_controller.setDampingForAllJoints(Math.max(mode == ClientCommandMode.TORQUE ? 0. : _damping, dampingFloor));
+            return joint_imp_controller;
+        }
+
+        CartesianImpedanceControlMode cart_imp_controller = new CartesianImpedanceControlMode();
+        cart_imp_controller.parametrize(CartDOF.X, CartDOF.Y, CartDOF.Z).setStiffness(_stiffnessTrans);
+        cart_imp_controller.parametrize(CartDOF.X, CartDOF.Y, CartDOF.Z).setDamping(Math.max(_dampingTrans, dampingFloor));
+        cart_imp_controller.parametrize(CartDOF.A, CartDOF.B, CartDOF.C).setStiffness(_stiffnessRot);
+        cart_imp_controller.parametrize(CartDOF.A, CartDOF.B, CartDOF.C).setDamping(Math.max(_dampingRot, dampingFloor));
+        cart_imp_controller.setNullSpaceStiffness(0);
+        cart_imp_controller.setNullSpaceDamping(Math.max(_nullSpaceDamping, dampingFloor));
+        return cart_imp_controller;
+    }
+
+    /**
+     * @param mode
+     *            the client command mode of the overlay
+     * @return the description of the parameters in effect for the mode
+     */
+    public String toString(ClientCommandMode mode)
+    {
+        String s = "controller " + _controller;
+        if (_controller == Controller.JOINT_IMPEDANCE)
+            s += " | stiffness " + _stiffness + " | damping " + (mode == ClientCommandMode.TORQUE ? 0. : _damping);
+        else if (_controller == Controller.CARTESIAN_IMPEDANCE)
+            s += " | stiffness trans/rot " + _stiffnessTrans + "/" + _stiffnessRot
+                    + " | damping trans/rot " + _dampingTrans + "/" + _dampingRot
+                    + " | nullspace damping " + _nullSpaceDamping;
+        return s;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toString(ClientCommandMode.POSITION);
+    }
+}
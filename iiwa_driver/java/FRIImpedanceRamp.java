@@ -0,0 +1,109 @@
+package application;
+
+/**
+ * Rate limits for retuning the impedance of a running overlay: a change is
+ * split into intermediate impedances, applied every step period, so that no
+ * stiffness changes faster than its rate. A change that needs more than the
+ * maximum number of steps at the step period is applied with a longer period
+ * instead, so the rates always hold and the number of steps stays bounded.
+ *
+ * Changes of the controller (e.g. from joint to Cartesian impedance) cannot be
+ * interpolated and are applied in one step.
+ */
+public class FRIImpedanceRamp
+{
+    private final double _jointStiffnessRate;
+    private final double _transStiffnessRate;
+    private final double _rotStiffnessRate;
+    private final long _stepMilliSec;
+    private final int _maxSteps;
+
+    /**
+     * @param jointStiffnessRate
+     *            maximum joint stiffness change [Nm/rad per s]
+     * @param transStiffnessRate
+     *            maximum translational stiffness change [N/m per s]
+     * @param rotStiffnessRate
+     *            maximum rotational stiffness change [Nm/rad per s]
+     * @param stepMilliSec
+     *            shortest period of the intermediate steps
+     * @param maxSteps
+     *            maximum number of steps of a change; longer changes get a
+     *            longer step period
+     */
+    public FRIImpedanceRamp(double jointStiffnessRate, double transStiffnessRate, double rotStiffnessRate, long stepMilliSec, int maxSteps)
+    {
+        _jointStiffnessRate = jointStiffnessRate;
+        _transStiffnessRate = transStiffnessRate;
+        _rotStiffnessRate = rotStiffnessRate;
+        _stepMilliSec = stepMilliSec;
+        _maxSteps = Math.max(1, maxSteps);
+    }
+
+    /**
+     * @param from
+     *            the current impedance, or null if unknown
+     * @param to
+     *            the target impedance
+     * @return the period between the steps of the change, at least the step
+     *         period
+     */
+    public long getStepMilliSec(FRIImpedance from, FRIImpedance to)
+    {
+        double durationMilliSec = getDurationMilliSec(from, to);
+        return Math.max(_stepMilliSec, (long) Math.ceil(durationMilliSec / getStepCount(durationMilliSec)));
+    }
+
+    /**
+     * @param from
+     *            the current impedance, or null if unknown
+     * @param to
+     *            the target impedance
+     * @return the impedances to apply, one per step period (see
+     *         {@link #getStepMilliSec(FRIImpedance, FRIImpedance)}), ending
+     *         with <code>to</code>
+     */
+    public FRIImpedance[] getSteps(FRIImpedance from, FRIImpedance to)
+    {
+        int n = getStepCount(getDurationMilliSec(from, to));
+        if (n == 1)
+            return new FRIImpedance[] { to };
+
+        FRIImpedance[] steps = new FRIImpedance[n];
+        for (int i = 1; i < n; i++)
+            steps[i - 1] = from.interpolate(to, (double) i / n);
+        steps[n - 1] = to;
+        return steps;
+    }
+
+    /**
+     * @return the shortest duration of the change at the rates, 0 if it is
+     *         applied in one step
+     */
+    private double getDurationMilliSec(FRIImpedance from, FRIImpedance to)
+    {
+        if (from == null || from.getController() != to.getController())
+            return 0.;
+
+        double durationSec = 0.;
+        if (to.getController() == FRIImpedance.Controller.JOINT_IMPEDANCE)
+            durationSec = Math.abs(to.getStiffness() - from.getStiffness()) / _jointStiffnessRate;
+        else if (to.getController() == FRIImpedance.Controller.CARTESIAN_IMPEDANCE)
+            durationSec = Math.max(Math.abs(to.getStiffnessTrans() - from.getStiffnessTrans()) / _transStiffnessRate,
+                    Math.abs(to.getStiffnessRot() - from.getStiffnessRot()) / _rotStiffnessRate);
+        return durationSec * 1000.;
+    }
+
+    private int getStepCount(double durationMilliSec)
+    {
+        int n = (int) Math.ceil(durationMilliSec / _stepMilliSec);
+        return Math.max(1, Math.min(n, _maxSteps));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Impedance ramp: joint " + _jointStiffnessRate + " | trans " + _transStiffnessRate + " | rot " + _rotStiffnessRate
+                + " per s | step " + _stepMilliSec + "ms or longer | max steps " + _maxSteps;
+    }
+}
@@ -0,0 +1,214 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.IMotionControlMode;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Handler of the <code>impedance</code> command of the
+ * {@link FRICommandServer}: retunes the impedance of the running overlay
+ * following an {@link FRIImpedanceRamp}, on the same FRI session. The control
+ * mode of a running motion cannot be changed, so every step of the ramp
+ * restarts the PositionHold overlay (see
+ * {@link FRISessionSupervisor#changeControlMode(IMotionControlMode)}): at each
+ * step, the session leaves COMMANDING_ACTIVE and the client stops commanding
+ * until the new overlay has started.
+ *
+ * The command returns once the target impedance is applied. In torque mode,
+ * only the joint impedance controller can be used, in wrench mode only the
+ * Cartesian one.
+ *
+ * The tuner also handles the <code>mode</code> command (see
+ * {@link #getModeHandler()}), which switches the client command mode of the
+ * running overlay on the same session.
+ *
+ * A damping floor (see {@link #setDampingFloor(double)}) raises the damping of
+ * every control mode the tuner applies, also in torque mode, e.g. while the
+ * link is degraded.
+ */
+public class FRIImpedanceTuner implements FRICommandServer.Handler
+{
+    private static final long MODE_SWITCH_TIMEOUT_MILLISEC = 1000;
+
+    private final FRISessionSupervisor _supervisor;
+    private final FRIImpedanceRamp _ramp;
+    private final int _jointCount;
+    private final boolean _cartesianPose;
+    private final ITaskLogger _logger;
+    private FRIImpedance _impedance;
+    private double _dampingFloor;
+
+    /**
+     * @param supervisor
+     *            the supervisor running the overlay
+     * @param ramp
+     *            rate limits of the changes
+     * @param jointCount
+     *            number of joints of the robot
+     * @param impedance
+     *            the impedance the overlay starts with, or null if unknown (the
+     *            first change is then applied in one step)
+     * @param cartesianPose
+     *            whether the Cartesian pose overlay is enabled
+     * @param logger
+     *            logger
+     */
+    public FRIImpedanceTuner(FRISessionSupervisor supervisor, FRIImpedanceRamp ramp, int jointCount, FRIImpedance impedance, boolean cartesianPose,
+            ITaskLogger logger)
+    {
+        _supervisor = supervisor;
+        _ramp = ramp;
+        _jointCount = jointCount;
+        _cartesianPose = cartesianPose;
+        _impedance = impedance;
+        _logger = logger;
+    }
+
+    @Override
+    public synchronized String handle(String[] args)
+    {
+        ClientCommandMode mode = _supervisor.getClientCommandMode();
+        if (mode == null)
+            throw new IllegalStateException("overlay not started");
+
+        FRIImpedance target = FRIImpedance.parse(args, _impedance);
+        checkController(mode, target);
+
+        FRIImpedance[] steps = _ramp.getSteps(_impedance, target);
+        long stepMilliSec = _ramp.getStepMilliSec(_impedance, target);
+        boolean running = true;
+        for (int i = 0; i < steps.length && running; i++) {
+            if (i > 0) {
+                try {
+                    Thread.sleep(stepMilliSec);
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted");
+                }
+            }
+            running = _supervisor.changeControlMode(createControlMode(steps[i], mode));
+            _impedance = steps[i];
+        }
+
+        if (!running) {
+            // no overlay to ramp: the next one starts with the target
+            _supervisor.changeControlMode(createControlMode(target, mode));
+            _impedance = target;
+            return "overlay not running, applied at the next start";
+        }
+        _logger.info("Impedance retuned in " + steps.length + " step(s): " + target.toString(mode));
+        _supervisor.getEventLog().parameter("impedance", target.toString(mode));
+        return target.toString(mode);
+    }
+
+    /**
+     * @return the handler of the <code>mode</code> command:
+     *         <code>mode [torque|position|wrench|pose [&lt;impedance&gt;]]</code>,
+     *         where the impedance takes the arguments of the
+     *         <code>impedance</code> command
+     */
+    public FRICommandServer.Handler getModeHandler()
+    {
+        return new FRICommandServer.Handler() {
+            @Override
+            public String handle(String[] args)
+            {
+                return switchMode(args);
+            }
+        };
+    }
+
+    /**
+     * Switches the client command mode of the running overlay. The robot holds
+     * its position in the PositionHold meanwhile; the command returns once the
+     * client commands in the new mode. Without impedance arguments, the
+     * current impedance is kept.
+     *
+     * @param args
+     *            the new mode and optionally the impedance; none to query the
+     *            current mode
+     * @return the reply
+     */
+    public synchronized String switchMode(String[] args)
+    {
+        ClientCommandMode current = _supervisor.getClientCommandMode();
+        if (current == null)
+            throw new IllegalStateException("overlay not started");
+        if (args.length == 0)
+            return current + (_impedance != null ? " | " + _impedance.toString(current) : "");
+
+        ClientCommandMode mode = parseMode(args[0]);
+        FRIImpedance target = _impedance;
+        if (args.length > 1) {
+            String[] impedanceArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, impedanceArgs, 0, impedanceArgs.length);
+            target = FRIImpedance.parse(impedanceArgs, _impedance);
+        }
+        else if (target == null)
+            throw new IllegalArgumentException("impedance unknown, add it after the mode, e.g. 'mode " + args[0] + " joint 0'");
+        checkController(mode, target);
+
+        long start = System.nanoTime();
+        boolean running = _supervisor.changeOverlay(mode, createControlMode(target, mode));
+        _impedance = target;
+        if (!running)
+            return "overlay not running, applied at the next start";
+
+        if (_supervisor.awaitCommanding(MODE_SWITCH_TIMEOUT_MILLISEC) < 0)
+            throw new IllegalStateException("switched to " + mode + ", but the client is not commanding after " + MODE_SWITCH_TIMEOUT_MILLISEC + "ms");
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        _supervisor.getEventLog().parameter("mode", mode);
+        _logger.info("Client command mode switched from " + current + " to " + mode + " in " + elapsed + "ms: " + target.toString(mode));
+        return mode + " in " + elapsed + "ms | " + target.toString(mode);
+    }
+
+    /**
+     * Sets the lowest damping of the joint or Cartesian impedance controller
+     * (also in torque mode, where the damping is 0 otherwise) and applies it
+     * to the running overlay in one step.
+     *
+     * @param damping
+     *            the damping floor, 0 to restore the impedance
+     */
+    public synchronized void setDampingFloor(double damping)
+    {
+        if (_impedance == null)
+            throw new IllegalStateException("impedance unknown");
+        _dampingFloor = damping;
+        ClientCommandMode mode = _supervisor.getClientCommandMode();
+        if (mode != null)
+            _supervisor.changeControlMode(createControlMode(_impedance, mode));
+        _logger.info("Damping floor set to " + damping);
+        _supervisor.getEventLog().parameter("damping_floor", damping);
+    }
+
+    private IMotionControlMode createControlMode(FRIImpedance impedance, ClientCommandMode mode)
+    {
+        return impedance.createControlMode(_jointCount, mode, _dampingFloor);
+    }
+
+    private ClientCommandMode parseMode(String value)
+    {
+        if (value.equalsIgnoreCase("torque"))
+            return ClientCommandMode.TORQUE;
+        if (value.equalsIgnoreCase("position"))
+            return ClientCommandMode.POSITION;
+        if (value.equalsIgnoreCase("wrench"))
+            return ClientCommandMode.WRENCH;
+        if (value.equalsIgnoreCase("pose")) {
+            if (!_cartesianPose)
+                throw new IllegalArgumentException("the Cartesian pose overlay is not enabled");
+            return FRIApplicationConfig.CARTESIAN_POSE;
+        }
+        throw new IllegalArgumentException("expected torque, position, wrench or pose");
+    }
+
+    private static void checkController(ClientCommandMode mode, FRIImpedance impedance)
+    {
+        if (mode == ClientCommandMode.TORQUE && impedance.getController() != FRIImpedance.Controller.JOINT_IMPEDANCE)
+            throw new IllegalArgumentException("torque mode requires the joint impedance controller");
+        if (mode == ClientCommandMode.WRENCH && impedance.getController() != FRIImpedance.Controller.CARTESIAN_IMPEDANCE)
+            throw new IllegalArgumentException("wrench mode requires the cartesian impedance controller");
+    }
+}
@@ -0,0 +1,210 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConnectionQuality;
+import com.kuka.connectivity.fastRobotInterface.FRISession;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Watches the FRI connection quality of the session of a
+ * {@link FRISessionSupervisor} every send period and steps through the
+ * fallbacks of an {@link FRILinkPolicy} while the link is degraded, instead of
+ * carrying on until the session dies: raise the damping of the PositionHold
+ * (through the {@link FRIImpedanceTuner}, also in torque mode) and hold the
+ * position locally (the overlay is suspended, the session keeps monitoring).
+ * A damping step replaces the overlay motion like any retuning, so commanding
+ * stops for a moment; policies meant for short blips should only hold. If the
+ * client is lost while the position is held, the supervisor recovers the
+ * session as after a disconnection.
+ *
+ * Once the quality has stayed above the level of the last step taken for the
+ * recovery time, the step is undone; the steps are undone one by one, in
+ * reverse order, and the suspended overlay is resumed.
+ *
+ * Handler of the <code>link</code> command of the {@link FRICommandServer},
+ * which replies the state of the guard.
+ */
+public class FRILinkGuard extends FRIPeriodicTask implements FRICommandServer.Handler
+{
+    private final FRILinkPolicy _policy;
+    private final ITaskLogger _logger;
+    private final long[] _degradedSince;
+    private FRISessionSupervisor _supervisor;
+    private FRIImpedanceTuner _tuner;
+
+    // state, written by the guard thread
+    private volatile FRIConnectionQuality _quality;
+    private volatile int _level;
+    private long _recoveringSince = -1;
+    private double _damping;
+    private boolean _holding;
+    private volatile long _degradations;
+
+    /**
+     * @param policy
+     *            the fallbacks
+     * @param logger
+     *            logger
+     */
+    public FRILinkGuard(FRILinkPolicy policy, ITaskLogger logger)
+    {
+        super("FRILinkGuard");
+        _policy = policy;
+        _logger = logger;
+        _degradedSince = new long[policy.getSteps().length];
+    }
+
+    /**
+     * Starts watching the session at its send period; does nothing if the
+     * policy is disabled.
+     *
+     * @param supervisor
+     *            the supervisor running the overlay
+     * @param tuner
+     *            the tuner of the overlay impedance, which applies the damping
+     */
+    public synchronized void start(FRISessionSupervisor supervisor, FRIImpedanceTuner tuner)
+    {
+        if (isRunning() || !_policy.isEnabled())
+            return;
+        _supervisor = supervisor;
+        _tuner = tuner;
+        for (int i = 0; i < _degradedSince.length; i++)
+            _degradedSince[i] = -1;
+        startPeriodic(supervisor.getConfiguration().getSendPeriodMilliSec() * 1000000L);
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        FRISession session = _supervisor.getSession();
+        if (session == null)
+            return;
+        FRIConnectionQuality quality;
+        try {
+            quality = session.getFRIChannelInformation().getQuality();
+        }
+        catch (final RuntimeException e) {
+            // session closed in the meantime
+            return;
+        }
+        _quality = quality;
+
+        FRILinkPolicy.Step[] steps = _policy.getSteps();
+        for (int i = 0; i < steps.length; i++) {
+            if (quality.compareTo(steps[i].getQuality()) > 0)
+                _degradedSince[i] = -1;
+            else if (_degradedSince[i] < 0)
+                _degradedSince[i] = now;
+        }
+
+        // degradation: the next steps whose dwell has elapsed, at once
+        int level = _level;
+        while (level < steps.length && _degradedSince[level] >= 0 && now - _degradedSince[level] >= steps[level].getDwellMilliSec() * 1000000L)
+            level++;
+        if (level > _level) {
+            _recoveringSince = -1;
+            _degradations++;
+            _logger.warn("[FRI link] quality " + quality + ": " + describe(_level, level));
+            _supervisor.getEventLog().link(_level, level, describe(_level, level));
+            apply(level);
+            return;
+        }
+
+        // recovery: the last step taken, once the link has been better long enough
+        if (_level == 0)
+            return;
+        if (_degradedSince[_level - 1] >= 0)
+            _recoveringSince = -1;
+        else if (_recoveringSince < 0)
+            _recoveringSince = now;
+        else if (now - _recoveringSince >= _policy.getRecoverMilliSec() * 1000000L) {
+            _recoveringSince = now;
+            _logger.info("[FRI link] quality " + quality + ": undoing " + steps[_level - 1]);
+            _supervisor.getEventLog().link(_level, _level - 1, steps[_level - 1].toString());
+            apply(_level - 1);
+        }
+    }
+
+    /**
+     * Applies the fallbacks of the steps below <code>level</code>.
+     */
+    private void apply(int level)
+    {
+        FRILinkPolicy.Step[] steps = _policy.getSteps();
+        double damping = 0.;
+        boolean hold = false;
+        for (int i = 0; i < level; i++) {
+            if (steps[i].getAction() == FRILinkPolicy.Action.DAMPING)
+                damping = Math.max(damping, steps[i].getDamping());
+            else
+                hold = true;
+        }
+        _level = level;
+
+        // the robot is held before the damping changes, and released after it
+        if (hold && !_holding)
+            setHolding(true);
+        if (damping != _damping) {
+            try {
+                _tuner.setDampingFloor(damping);
+                _damping = damping;
+            }
+            catch (final RuntimeException e) {
+                _logger.warn("[FRI link] cannot change the damping: " + e.getLocalizedMessage());
+            }
+        }
+        if (!hold && _holding)
+            setHolding(false);
+    }
+
+    private void setHolding(boolean hold)
+    {
+        if (!hold) {
+            _supervisor.resumeOverlay();
+            _holding = false;
+            return;
+        }
+        try {
+            _supervisor.suspendOverlay();
+            _holding = true;
+        }
+        catch (final IllegalStateException e) {
+            // e.g. a trajectory or a contact hold: the robot is not overlaid
+            _logger.warn("[FRI link] cannot hold: " + e.getLocalizedMessage());
+        }
+    }
+
+    private String describe(int from, int to)
+    {
+        FRILinkPolicy.Step[] steps = _policy.getSteps();
+        StringBuilder s = new StringBuilder();
+        for (int i = from; i < to; i++)
+            s.append(i > from ? ", " : "").append(steps[i]);
+        return s.toString();
+    }
+
+    @Override
+    protected void finish()
+    {
+        // the overlay ends with the application, nothing to resume
+        if (_level > 0)
+            _logger.info("[FRI link] stopped at step " + _level + "/" + _policy.getSteps().length);
+    }
+
+    @Override
+    public String handle(String[] args)
+    {
+        if (args.length != 0)
+            throw new IllegalArgumentException("invalid arguments for link");
+        return toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        if (!_policy.isEnabled())
+            return _policy.toString();
+        return "Link guard: quality " + (_quality != null ? _quality.toString() : "unknown") + " | step " + _level + "/" + _policy.getSteps().length
+                + (_level > 0 ? " (" + describe(0, _level) + ")" : "") + " | degradations " + _degradations;
+    }
+}
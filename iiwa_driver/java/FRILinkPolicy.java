@@ -0,0 +1,141 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConnectionQuality;
+
+/**
+ * Degradation policy of {@link FRILinkGuard}: the fallbacks taken, in order,
+ * while the FRI connection quality stays at or below a level, and the time the
+ * link has to be better before they are undone one by one.
+ *
+ * <pre>
+ * new FRILinkPolicy(2000, FRILinkPolicy.damping(FRIConnectionQuality.FAIR, 20, 0.7), FRILinkPolicy.hold(FRIConnectionQuality.FAIR, 500))
+ * </pre>
+ */
+public class FRILinkPolicy
+{
+    public enum Action
+    {
+        /** raise the damping of the PositionHold (also in torque mode) */
+        DAMPING,
+        /** suspend the overlay: the robot holds its position locally */
+        HOLD
+    }
+
+    /**
+     * One fallback: taken once the quality has stayed at or below
+     * <code>quality</code> for <code>dwellMilliSec</code>, after the previous
+     * steps.
+     */
+    public static class Step
+    {
+        private final FRIConnectionQuality _quality;
+        private final long _dwellMilliSec;
+        private final Action _action;
+        private final double _damping;
+
+        private Step(FRIConnectionQuality quality, long dwellMilliSec, Action action, double damping)
+        {
+            if (dwellMilliSec < 0)
+                throw new IllegalArgumentException("negative dwell " + dwellMilliSec);
+            _quality = quality;
+            _dwellMilliSec = dwellMilliSec;
+            _action = action;
+            _damping = damping;
+        }
+
+        public FRIConnectionQuality getQuality()
+        {
+            return _quality;
+        }
+
+        public long getDwellMilliSec()
+        {
+            return _dwellMilliSec;
+        }
+
+        public Action getAction()
+        {
+            return _action;
+        }
+
+        public double getDamping()
+        {
+            return _damping;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (_action == Action.DAMPING ? "damping " + _damping : "hold") + " at " + _quality + " for " + _dwellMilliSec + "ms";
+        }
+    }
+
+    private final long _recoverMilliSec;
+    private final Step[] _steps;
+
+    /**
+     * @param recoverMilliSec
+     *            how long the quality has to stay above the level of the last
+     *            step taken before it is undone
+     * @param steps
+     *            the fallbacks, in the order they are taken
+     */
+    public FRILinkPolicy(long recoverMilliSec, Step... steps)
+    {
+        _recoverMilliSec = recoverMilliSec;
+        _steps = steps;
+    }
+
+    /**
+     * @return a policy that takes no fallback
+     */
+    public static FRILinkPolicy disabled()
+    {
+        return new FRILinkPolicy(0);
+    }
+
+    /**
+     * @return a step raising the damping of the joint or Cartesian impedance
+     *         controller to at least <code>damping</code>
+     */
+    public static Step damping(FRIConnectionQuality quality, long dwellMilliSec, double damping)
+    {
+        if (!(damping >= 0. && damping <= 1.))
+            throw new IllegalArgumentException("damping out of [0, 1]: " + damping);
+        return new Step(quality, dwellMilliSec, Action.DAMPING, damping);
+    }
+
+    /**
+     * @return a step suspending the overlay until the link recovers
+     */
+    public static Step hold(FRIConnectionQuality quality, long dwellMilliSec)
+    {
+        return new Step(quality, dwellMilliSec, Action.HOLD, 0.);
+    }
+
+    public boolean isEnabled()
+    {
+        return _steps.length > 0;
+    }
+
+    public long getRecoverMilliSec()
+    {
+        return _recoverMilliSec;
+    }
+
+    public Step[] getSteps()
+    {
+        return _steps;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (!isEnabled())
+            return "Link policy disabled";
+        StringBuilder s = new StringBuilder("Link policy: ");
+        for (Step step : _steps)
+            s.append(step).append(" | ");
+        return s.append("recover after ").append(_recoverMilliSec).append("ms").toString();
+    }
+}
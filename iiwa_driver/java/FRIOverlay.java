@@ -1,141 +1,42 @@
 package application;
 
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
-import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
-import com.kuka.connectivity.fastRobotInterface.FRIJointOverlay;
-import com.kuka.connectivity.fastRobotInterface.FRISession;
-import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
-import com.kuka.roboticsAPI.controllerModel.Controller;
-import com.kuka.roboticsAPI.deviceModel.LBR;
-import com.kuka.roboticsAPI.motionModel.PositionHold;
-import com.kuka.roboticsAPI.motionModel.controlModeModel.JointImpedanceControlMode;
-import com.kuka.roboticsAPI.uiModel.ApplicationDialogType;
-import com.kuka.roboticsAPI.executionModel.CommandInvalidException;
-
-
 /**
- * Moves the LBR in a start position, creates an FRI-Session and executes a
- * PositionHold motion with FRI overlay. During this motion joint angles and
- * joint torques can be additionally commanded via FRI.
+ * Creates an FRI session per LBR of the station and executes a PositionHold
+ * motion with FRI overlay on each. During this motion joint angles and joint
+ * torques can be additionally commanded via FRI.
+ *
+ * Every LBR gets its own FRI session, client, overlay and control mode; the
+ * overlays run on separate threads and are started together once the clients
+ * are connected.
  */
-public class FRIOverlay extends RoboticsAPIApplication
+public class FRIOverlay extends FRIApplication
 {
-    private Controller _lbrController;
-    private LBR _lbr;
-    private String _clientName;
-
     @Override
-    public void initialize()
+    protected void configure(FRIApplicationConfig config)
     {
-        _lbrController = (Controller) getContext().getControllers().toArray()[0];
-        _lbr = (LBR) _lbrController.getDevices().toArray()[0];
         // **********************************************************************
-        // *** change next line to the FRIClient's IP address                 ***
+        // *** change next line to the FRIClients' IP addresses, one per LBR  ***
+        // *** in the order of the devices (the last one is used for the      ***
+        // *** remaining robots), and the FRI port of the first robot; the    ***
+        // *** next robots use the following ports (30200-30209)              ***
         // **********************************************************************
-        _clientName = "192.170.10.1";
-    }
-
-    @Override
-    public void run()
-    {
-        // configure and start FRI session
-        FRIConfiguration friConfiguration = FRIConfiguration.createRemoteConfiguration(_lbr, _clientName);
-        // for torque mode, there has to be a command value at least all 5ms
-        friConfiguration.setSendPeriodMilliSec(5);
-        friConfiguration.setReceiveMultiplier(1);
-
-        getLogger().info("Creating FRI connection to " + friConfiguration.getHostName());
-        getLogger().info("SendPeriod: " + friConfiguration.getSendPeriodMilliSec() + "ms |"
-                + " ReceiveMultiplier: " + friConfiguration.getReceiveMultiplier());
-
-        FRISession friSession = new FRISession(friConfiguration);
+        config.setClients(30200, "192.170.10.1");
+        config.setAllRobots(true);
 
-        // wait until FRI session is ready to switch to command mode
-        try
-        {
-            friSession.await(10, TimeUnit.SECONDS);
-        }
-        catch (final TimeoutException e)
-        {
-            getLogger().error(e.getLocalizedMessage());
-            friSession.close();
-            return;
-        }
-
-        getLogger().info("FRI connection established.");
-
-        int modeChoice = getApplicationUI().displayModalDialog(ApplicationDialogType.QUESTION, "Choose control mode", "Torque", "Position", "Wrench");
-
-        ClientCommandMode mode = ClientCommandMode.TORQUE;
-        if (modeChoice == 0) {
-            getLogger().info("Torque control mode chosen");
-            mode = ClientCommandMode.TORQUE;
-        }
-        else if (modeChoice == 1) {
-            getLogger().info("Position control mode chosen");
-            mode = ClientCommandMode.POSITION;
-        }
-        else if (modeChoice == 2) {
-            getLogger().warn("Wrench control mode not supported yet. Using position control mode instead");
-            mode = ClientCommandMode.POSITION;
-        }
-        else {
-            getLogger().warn("Invalid choice: using position control mode");
-            mode = ClientCommandMode.POSITION;
-        }
-        FRIJointOverlay jointOverlay = new FRIJointOverlay(friSession, mode);
-
-        int choice = getApplicationUI().displayModalDialog(ApplicationDialogType.QUESTION, "Choose stiffness for actuators", "0", "20", "50", "150", "300", "500");
-
-        double stiffness = 0.;
-        if (choice == 0) {
-            getLogger().info("Stiffness of '0' chosen");
-            stiffness = 0.;
-        }
-        else if (choice == 1) {
-            getLogger().info("Stiffness of '20' chosen");
-            stiffness = 20.;
-        }
-        else if (choice == 2) {
-            getLogger().info("Stiffness of '50' chosen");
-            stiffness = 50.;
-        }
-        else if (choice == 3) {
-            getLogger().info("Stiffness of '150' chosen");
-            stiffness = 150.;
-        }
-        else if (choice == 4) {
-            getLogger().info("Stiffness of '300' chosen");
-            stiffness = 300.;
-        }
-        else if (choice == 5) {
-            getLogger().info("Stiffness of '500' chosen");
-            stiffness = 500.;
-        }
-        else {
-            getLogger().warn("Invalid choice: setting stiffness to '20'");
-            stiffness = 20.;
-        }
-
-        // start PositionHold with overlay
-        JointImpedanceControlMode ctrMode = new JointImpedanceControlMode(stiffness, stiffness, stiffness, stiffness, stiffness, stiffness, stiffness);
-        if (mode == ClientCommandMode.TORQUE)
-            ctrMode.setDampingForAllJoints(0.);
-
-        try {
-            PositionHold posHold = new PositionHold(ctrMode, -1, TimeUnit.SECONDS);
-            getLogger().info("Robot is ready for ROS control.");
-            _lbr.move(posHold.addMotionOverlay(jointOverlay));
-        }
-        catch(final CommandInvalidException e) {
-            getLogger().error("ROS has been disconnected.");
-        }
-
-        // done
-        friSession.close();
+        // **********************************************************************
+        // *** start-up dialogs, when no preset is used                       ***
+        // **********************************************************************
+        config.addDialog(FRIDialog.modes("Choose control mode"));
+        config.addDialog(FRIDialog.values("Choose stiffness for actuators", "stiffness", "0", "20", "50", "150", "300", "500")
+                .when("controller", "JOINT_IMPEDANCE").byDefault(1));
+        // the wrench overlay requires the Cartesian impedance controller
+        config.addDialog(new FRIDialog("Choose Cartesian stiffness (trans/rot)")
+                .option("0/0", "stiffness_trans=0", "stiffness_rot=0")
+                .option("500/50", "stiffness_trans=500", "stiffness_rot=50")
+                .option("1000/100", "stiffness_trans=1000", "stiffness_rot=100")
+                .option("2000/200", "stiffness_trans=2000", "stiffness_rot=200")
+                .option("3000/300", "stiffness_trans=3000", "stiffness_rot=300")
+                .when("controller", "CARTESIAN_IMPEDANCE").byDefault(2));
     }
 
     /**
@@ -0,0 +1,91 @@
+package application;
+
+/**
+ * Background task that runs {@link #cycle(long)} at a fixed period on a daemon
+ * thread. Missed periods are skipped instead of caught up.
+ */
+public abstract class FRIPeriodicTask implements Runnable
+{
+    private final String _name;
+    private long _periodNanos;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    protected FRIPeriodicTask(String name)
+    {
+        _name = name;
+    }
+
+    /**
+     * Called every period with the current System.nanoTime().
+     */
+    protected abstract void cycle(long now);
+
+    /**
+     * Called once on the task thread after the last cycle.
+     */
+    protected void finish()
+    {
+    }
+
+    protected synchronized void startPeriodic(long periodNanos)
+    {
+        if (_running)
+            return;
+        _periodNanos = periodNanos;
+        _running = true;
+        _thread = new Thread(this, _name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public boolean isRunning()
+    {
+        return _running;
+    }
+
+    /**
+     * Stops the task and waits for its thread to end.
+     */
+    public void stop()
+    {
+        Thread thread;
+        synchronized (this) {
+            _running = false;
+            thread = _thread;
+            _thread = null;
+        }
+        if (thread == null)
+            return;
+        try {
+            thread.join();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        long next = System.nanoTime();
+        while (_running) {
+            long now = System.nanoTime();
+            cycle(now);
+
+            next += _periodNanos;
+            if (next < now)
+                next = now + _periodNanos;
+            long sleepNanos = next - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+                }
+                catch (final InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        finish();
+    }
+}
@@ -0,0 +1,152 @@
+package application;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Measures the phases of an application run: start-up, session creation,
+ * first commanded cycle, teardown and reconnection. Phases may run
+ * concurrently, may be started and stopped from different threads and may
+ * occur several times (e.g. once per reconnection).
+ *
+ * At the end of the run, the phases are written to a CSV file of the run
+ * (see {@link #write(File, ITaskLogger)}), so the timings of many runs can be
+ * aggregated.
+ */
+public class FRIPhaseTimer
+{
+    /**
+     * A measured phase; all times are relative to the creation of the timer.
+     */
+    public class Phase
+    {
+        private final String _name;
+        private final long _startNanos;
+        private long _stopNanos = -1;
+
+        private Phase(String name)
+        {
+            _name = name;
+            _startNanos = System.nanoTime() - _originNanos;
+        }
+
+        public void stop()
+        {
+            synchronized (FRIPhaseTimer.this) {
+                if (_stopNanos < 0)
+                    _stopNanos = System.nanoTime() - _originNanos;
+            }
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public double getStartMilliSec()
+        {
+            return _startNanos / 1e6;
+        }
+
+        /**
+         * @return the duration in ms, or a negative value if still running
+         */
+        public double getDurationMilliSec()
+        {
+            synchronized (FRIPhaseTimer.this) {
+                return _stopNanos < 0 ? -1. : (_stopNanos - _startNanos) / 1e6;
+            }
+        }
+    }
+
+    private final long _originNanos = System.nanoTime();
+    private final long _originMillis = System.currentTimeMillis();
+    private final List<Phase> _phases = new ArrayList<Phase>();
+
+    public synchronized Phase start(String name)
+    {
+        Phase phase = new Phase(name);
+        _phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * @return the time (in ms) since the creation of the timer
+     */
+    public double getElapsedMilliSec()
+    {
+        return (System.nanoTime() - _originNanos) / 1e6;
+    }
+
+    public synchronized List<Phase> getPhases()
+    {
+        return new ArrayList<Phase>(_phases);
+    }
+
+    /**
+     * Logs one line per phase (start and duration in ms) and the total time
+     * since the creation of the timer.
+     */
+    public void report(ITaskLogger logger)
+    {
+        for (Phase phase : getPhases()) {
+            double duration = phase.getDurationMilliSec();
+            logger.info(String.format("[timing] %-24s start %8.1fms | %s", phase.getName(), phase.getStartMilliSec(),
+                    duration < 0 ? "running" : String.format("%8.1fms", duration)));
+        }
+        logger.info(String.format("[timing] %-24s %8.1fms", "total", getElapsedMilliSec()));
+    }
+
+    /**
+     * Writes the phases of this run to <code>&lt;name&gt;_&lt;run&gt;.csv</code>
+     * next to <code>file</code>, where run is the start time of the run in ms
+     * since the epoch. Columns: run, phase, start in ms, duration in ms (empty
+     * if still running); the total time is the last row.
+     *
+     * @param file
+     *            the report file name, or null to skip the report
+     * @param logger
+     *            logger
+     */
+    public void write(File file, ITaskLogger logger)
+    {
+        if (file == null)
+            return;
+
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        name = (dot < 0 ? name : name.substring(0, dot)) + "_" + _originMillis + ".csv";
+        File report = new File(file.getParentFile(), name);
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(report));
+            try {
+                out.println("run,phase,start_ms,duration_ms");
+                for (Phase phase : getPhases()) {
+                    double duration = phase.getDurationMilliSec();
+                    out.println(_originMillis + "," + csv(phase.getName()) + "," + String.format(Locale.ROOT, "%.3f", phase.getStartMilliSec()) + ","
+                            + (duration < 0 ? "" : String.format(Locale.ROOT, "%.3f", duration)));
+                }
+                out.println(_originMillis + ",total,0.000," + String.format(Locale.ROOT, "%.3f", getElapsedMilliSec()));
+            }
+            finally {
+                out.close();
+            }
+            logger.info("[timing] report written to " + report.getPath());
+        }
+        catch (final IOException e) {
+            logger.warn("Cannot write timing report: " + e.getLocalizedMessage());
+        }
+    }
+
+    private static String csv(String value)
+    {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 ? value : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
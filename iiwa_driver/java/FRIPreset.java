@@ -0,0 +1,257 @@
+package application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.IMotionControlMode;
+
+/**
+ * Named start-up preset (control mode, controller and impedance parameters)
+ * that lets an FRI application go from initialize() to the overlay motion
+ * without any dialog.
+ *
+ * Presets are read from a properties file on the controller, e.g.:
+ *
+ * <pre>
+ * preset = torque_soft
+ * torque_soft.mode = TORQUE
+ * torque_soft.controller = JOINT_IMPEDANCE
+ * torque_soft.stiffness = 500
+ * </pre>
+ *
+ * The preset to load is taken from the process data {@link #PROCESS_DATA_KEY}
+ * if it is defined and not empty, otherwise from the <code>preset</code> key of
+ * the file. In multi-robot applications, a key
+ * <code>preset.&lt;robot name&gt;</code> takes precedence over
+ * <code>preset</code> for that robot. See
+ * <code>iiwa_driver/config/fri_presets.properties</code>.
+ */
+public class FRIPreset
+{
+    public static final String PROCESS_DATA_KEY = "friPreset";
+    public static final String DEFAULT_PRESET_KEY = "preset";
+
+    private final String _name;
+    private ClientCommandMode _mode = ClientCommandMode.POSITION;
+    private FRIImpedance _impedance;
+
+    private FRIPreset(String name)
+    {
+        _name = name;
+    }
+
+    /**
+     * Loads a preset from a properties file.
+     *
+     * @param file
+     *            the presets file
+     * @param name
+     *            the preset to load; if null or empty, the file's
+     *            <code>preset</code> key is used
+     * @return the preset, or null if no preset was requested
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalArgumentException
+     *             if the preset does not exist or is invalid
+     */
+    public static FRIPreset load(File file, String name) throws IOException
+    {
+        return load(file, name, null);
+    }
+
+    /**
+     * Loads the preset of one robot from a properties file.
+     *
+     * @param file
+     *            the presets file
+     * @param name
+     *            the preset to load; if null or empty, the file's
+     *            <code>preset.&lt;robotName&gt;</code> or <code>preset</code>
+     *            key is used
+     * @param robotName
+     *            the name of the robot, or null
+     * @return the preset, or null if no preset was requested
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalArgumentException
+     *             if the preset does not exist or is invalid
+     */
+    public static FRIPreset load(File file, String name, String robotName) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+
+        if ((name == null || name.trim().isEmpty()) && robotName != null)
+            name = properties.getProperty(DEFAULT_PRESET_KEY + "." + robotName);
+        if (name == null || name.trim().isEmpty())
+            name = properties.getProperty(DEFAULT_PRESET_KEY, "");
+        name = name.trim();
+        if (name.isEmpty())
+            return null;
+
+        if (properties.getProperty(name + ".mode") == null)
+            throw new IllegalArgumentException("Preset '" + name + "' not found in " + file.getPath());
+        return create(name, properties, name + ".");
+    }
+
+    /**
+     * Creates a preset from its properties (see the keys above). Without a
+     * controller, the controller required by the mode is used (joint
+     * impedance for position mode).
+     *
+     * @param name
+     *            the name of the preset
+     * @param properties
+     *            the properties
+     * @param prefix
+     *            the prefix of the keys of the preset (e.g. "torque_soft.")
+     * @return the preset
+     * @throws IllegalArgumentException
+     *             if the preset is invalid
+     */
+    public static FRIPreset create(String name, Properties properties, String prefix)
+    {
+        FRIPreset preset = new FRIPreset(name);
+        preset._mode = ClientCommandMode.valueOf(properties.getProperty(prefix + "mode", ClientCommandMode.POSITION.name()).trim());
+        FRIImpedance.Controller controller = FRIImpedance.Controller.valueOf(properties.getProperty(prefix + "controller", defaultController(preset._mode).name()).trim());
+        if (controller == FRIImpedance.Controller.POSITION)
+            preset._impedance = FRIImpedance.position();
+        else if (controller == FRIImpedance.Controller.JOINT_IMPEDANCE)
+            preset._impedance = FRIImpedance.joint(getDouble(properties, prefix + "stiffness", 500.), getDouble(properties, prefix + "damping", 0.7));
+        else
+            preset._impedance = FRIImpedance.cartesian(getDouble(properties, prefix + "stiffness_trans", 2000.),
+                    getDouble(properties, prefix + "stiffness_rot", 200.),
+                    getDouble(properties, prefix + "damping_trans", 0.7),
+                    getDouble(properties, prefix + "damping_rot", 0.7),
+                    getDouble(properties, prefix + "nullspace_damping", 0.7));
+
+        if (preset._mode != ClientCommandMode.TORQUE && preset._mode != ClientCommandMode.POSITION && preset._mode != ClientCommandMode.WRENCH
+                && preset._mode != FRIApplicationConfig.CARTESIAN_POSE)
+            throw new IllegalArgumentException("Preset '" + name + "': unsupported mode " + preset._mode);
+        if (preset._mode == ClientCommandMode.TORQUE && preset._impedance.getController() != FRIImpedance.Controller.JOINT_IMPEDANCE)
+            throw new IllegalArgumentException("Preset '" + name + "': torque mode requires the JOINT_IMPEDANCE controller");
+        if (preset._mode == ClientCommandMode.WRENCH && preset._impedance.getController() != FRIImpedance.Controller.CARTESIAN_IMPEDANCE)
+            throw new IllegalArgumentException("Preset '" + name + "': wrench mode requires the CARTESIAN_IMPEDANCE controller");
+
+        return preset;
+    }
+
+    /**
+     * @return the controller used when a preset does not name one
+     */
+    public static FRIImpedance.Controller defaultController(ClientCommandMode mode)
+    {
+        return mode == ClientCommandMode.WRENCH ? FRIImpedance.Controller.CARTESIAN_IMPEDANCE : FRIImpedance.Controller.JOINT_IMPEDANCE;
+    }
+
+    /**
+     * Resolves the start-up preset of an application: the preset named by the
+     * process data {@link #PROCESS_DATA_KEY} (or the file's default preset) is
+     * loaded from the given file. Errors are logged and lead to no preset, so
+     * that the application falls back to its dialogs.
+     *
+     * @param app
+     *            the application
+     * @param file
+     *            the presets file
+     * @return the preset, or null if the dialogs should be used
+     */
+    public static FRIPreset resolve(RoboticsAPIApplication app, File file)
+    {
+        return resolve(app, file, null);
+    }
+
+    /**
+     * Resolves the start-up preset of one robot of a multi-robot application,
+     * see {@link #resolve(RoboticsAPIApplication, File)}.
+     *
+     * @param app
+     *            the application
+     * @param file
+     *            the presets file
+     * @param robotName
+     *            the name of the robot, or null
+     * @return the preset, or null if the dialogs should be used
+     */
+    public static FRIPreset resolve(RoboticsAPIApplication app, File file, String robotName)
+    {
+        if (file == null || !file.exists())
+            return null;
+
+        String name = null;
+        try {
+            Object value = app.getApplicationData().getProcessData(PROCESS_DATA_KEY).getValue();
+            if (value != null)
+                name = value.toString();
+        }
+        catch (final RuntimeException e) {
+            // process data not defined in this project: use the default preset of the file
+        }
+
+        try {
+            FRIPreset preset = load(file, name, robotName);
+            if (preset != null)
+                app.getLogger().info((robotName != null ? robotName + ": " : "") + "Using start-up preset '" + preset.getName() + "' from " + file.getPath());
+            return preset;
+        }
+        catch (final IOException e) {
+            app.getLogger().error("Cannot read presets file " + file.getPath() + ": " + e.getLocalizedMessage());
+        }
+        catch (final IllegalArgumentException e) {
+            app.getLogger().error("Invalid start-up preset: " + e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    private static double getDouble(Properties properties, String key, double defaultValue)
+    {
+        String value = properties.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        return Double.parseDouble(value.trim());
+    }
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    public ClientCommandMode getMode()
+    {
+        return _mode;
+    }
+
+    public FRIImpedance getImpedance()
+    {
+        return _impedance;
+    }
+
+    /**
+     * Creates the control mode of the PositionHold for this preset.
+     *
+     * @param jointCount
+     *            number of joints of the robot
+     * @return the control mode
+     */
+    public IMotionControlMode createControlMode(int jointCount)
+    {
+        return _impedance.createControlMode(jointCount, _mode);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Preset '" + _name + "': mode " + _mode + " | " + _impedance.toString(_mode);
+    }
+}
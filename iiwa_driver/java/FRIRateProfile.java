@@ -0,0 +1,60 @@
+package application;
+
+import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
+
+/**
+ * FRI cycle-rate profiles. The send period is the period (in ms) with which the
+ * controller sends monitoring messages to the client; the receive multiplier
+ * defines after how many send periods the controller expects a command back.
+ *
+ * The C++ driver runs one control cycle per monitoring message, so the chosen
+ * profile has to match <code>hardware_interface/control_freq</code> in
+ * <code>iiwa_driver/config/iiwa.yaml</code> (see {@link #getControlFrequency()}).
+ */
+public enum FRIRateProfile
+{
+    RATE_1000HZ(1, 1),
+    RATE_500HZ(2, 1),
+    RATE_200HZ(5, 1);
+
+    private final int _sendPeriodMilliSec;
+    private final int _receiveMultiplier;
+
+    private FRIRateProfile(int sendPeriodMilliSec, int receiveMultiplier)
+    {
+        _sendPeriodMilliSec = sendPeriodMilliSec;
+        _receiveMultiplier = receiveMultiplier;
+    }
+
+    public int getSendPeriodMilliSec()
+    {
+        return _sendPeriodMilliSec;
+    }
+
+    public int getReceiveMultiplier()
+    {
+        return _receiveMultiplier;
+    }
+
+    /**
+     * @return the rate (in Hz) the client has to run at, i.e. the value of
+     *         <code>control_freq</code> in the driver configuration
+     */
+    public double getControlFrequency()
+    {
+        return 1000. / _sendPeriodMilliSec;
+    }
+
+    /**
+     * Writes the send period and receive multiplier of this profile into an
+     * FRI configuration. Has to be called before the FRISession is created.
+     *
+     * @param friConfiguration
+     *            the configuration to modify
+     */
+    public void apply(FRIConfiguration friConfiguration)
+    {
+        friConfiguration.setSendPeriodMilliSec(_sendPeriodMilliSec);
+        friConfiguration.setReceiveMultiplier(_receiveMultiplier);
+    }
+}
@@ -0,0 +1,80 @@
+package application;
+
+/**
+ * Reconnection policy of {@link FRISessionSupervisor}: after the client has been
+ * disconnected, a new FRISession is created up to {@link #getMaxRetries()} times,
+ * waiting an exponentially growing backoff before each attempt.
+ */
+public class FRIRecoveryPolicy
+{
+    private final int _maxRetries;
+    private final long _initialBackoffMilliSec;
+    private final long _maxBackoffMilliSec;
+    private final double _backoffFactor;
+    private final long _awaitTimeoutSec;
+
+    /**
+     * @param maxRetries
+     *            reconnection attempts per disconnection; 0 terminates the
+     *            application on the first disconnection
+     * @param initialBackoffMilliSec
+     *            wait before the first attempt
+     * @param maxBackoffMilliSec
+     *            upper bound of the wait between attempts
+     * @param backoffFactor
+     *            growth of the wait from one attempt to the next
+     * @param awaitTimeoutSec
+     *            how long each attempt waits for the client
+     */
+    public FRIRecoveryPolicy(int maxRetries, long initialBackoffMilliSec, long maxBackoffMilliSec, double backoffFactor, long awaitTimeoutSec)
+    {
+        _maxRetries = maxRetries;
+        _initialBackoffMilliSec = initialBackoffMilliSec;
+        _maxBackoffMilliSec = maxBackoffMilliSec;
+        _backoffFactor = backoffFactor;
+        _awaitTimeoutSec = awaitTimeoutSec;
+    }
+
+    /**
+     * @return a policy that never reconnects
+     */
+    public static FRIRecoveryPolicy disabled()
+    {
+        return new FRIRecoveryPolicy(0, 0, 0, 1., 0);
+    }
+
+    public boolean isEnabled()
+    {
+        return _maxRetries > 0;
+    }
+
+    public int getMaxRetries()
+    {
+        return _maxRetries;
+    }
+
+    public long getAwaitTimeoutSec()
+    {
+        return _awaitTimeoutSec;
+    }
+
+    /**
+     * @param attempt
+     *            reconnection attempt, starting at 0
+     * @return the wait (in ms) before the given attempt
+     */
+    public long getBackoffMilliSec(int attempt)
+    {
+        double backoff = _initialBackoffMilliSec * Math.pow(_backoffFactor, attempt);
+        return (long) Math.min(backoff, _maxBackoffMilliSec);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (!isEnabled())
+            return "Recovery disabled";
+        return "Recovery: " + _maxRetries + " retries | backoff " + _initialBackoffMilliSec + "ms x" + _backoffFactor
+                + " (max " + _maxBackoffMilliSec + "ms) | await " + _awaitTimeoutSec + "s";
+    }
+}
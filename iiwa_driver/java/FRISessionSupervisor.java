@@ -0,0 +1,703 @@
+package application;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.kuka.connectivity.fastRobotInterface.ClientCommandMode;
+import com.kuka.connectivity.fastRobotInterface.FRIChannelInformation;
+import com.kuka.connectivity.fastRobotInterface.FRIConnectionQuality;
+import com.kuka.connectivity.fastRobotInterface.FRIConfiguration;
+import com.kuka.connectivity.fastRobotInterface.FRIJointOverlay;
+import com.kuka.connectivity.fastRobotInterface.FRISession;
+import com.kuka.connectivity.fastRobotInterface.FRISessionState;
+import com.kuka.roboticsAPI.conditionModel.IFiredConditionInfo;
+import com.kuka.roboticsAPI.executionModel.CommandInvalidException;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.motionModel.IMotionContainer;
+import com.kuka.roboticsAPI.motionModel.IMotionOverlay;
+import com.kuka.roboticsAPI.motionModel.PositionHold;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.IMotionControlMode;
+import com.kuka.roboticsAPI.motionModel.controlModeModel.PositionControlMode;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Owns the FRISession of an application and runs the PositionHold motion with
+ * FRI overlay. When the client disconnects, the robot holds its position
+ * locally (without overlay) while new sessions are created according to the
+ * {@link FRIRecoveryPolicy}; once the client is back, a fresh overlay is
+ * started. With a standby client ({@link #setStandby(FRIConfiguration)}), the
+ * first new session is created to the standby right away, and the following
+ * attempts alternate between both clients.
+ *
+ * The first connection can be started in the background with
+ * {@link #startConnect(long, TimeUnit)}, so that the session handshake runs
+ * while the application builds its tool and control mode.
+ *
+ * The control mode of a running PositionHold cannot be changed; with
+ * {@link #changeControlMode(IMotionControlMode)}, the overlay motion is
+ * replaced by one with the new control mode on the same session instead. The
+ * client command mode is switched the same way with
+ * {@link #changeOverlay(ClientCommandMode, IMotionControlMode)}.
+ *
+ * With a {@link FRIContactGuard}, the overlay motion breaks on contact; the
+ * guard holds the robot until the client resumes, and the overlay is then
+ * restarted on the same session.
+ *
+ * The overlay can be suspended with {@link #suspendOverlay()}, e.g. to
+ * execute a trajectory locally or to change the tool, while the session keeps
+ * monitoring. No overlay motion fails while suspended, so the session is
+ * watched meanwhile: once the client is lost (the session is IDLE or the
+ * quality UNACCEPTABLE), the suspension is dropped and the session is
+ * recovered as after a disconnection.
+ *
+ * The session creation, the wait for the client, the first commanded cycle of
+ * every overlay, and the teardown and reconnection after a disconnection are
+ * timed as phases of the {@link FRIPhaseTimer}. Connections, disconnections and
+ * reconnection attempts are emitted to the {@link FRIEventLog}, which the
+ * components of the session share through {@link #getEventLog()}.
+ */
+public class FRISessionSupervisor
+{
+    private static final String CARTESIAN_OVERLAY_CLASS = "com.kuka.connectivity.fastRobotInterface.FRICartesianOverlay";
+
+    private volatile FRIConfiguration _friConfiguration;
+    private FRIConfiguration _standbyConfiguration;
+    private final FRIRecoveryPolicy _recoveryPolicy;
+    private final ITaskLogger _logger;
+    private final FRIPhaseTimer _timer;
+    private String _prefix = "";
+    private volatile FRIContactGuard _contactGuard;
+    private volatile FRIEventLog.Source _events = FRIEventLog.NONE;
+    private volatile FRISession _friSession;
+    private Future<Boolean> _pendingConnect;
+
+    // overlay motion
+    private ObjectFrame _motionFrame;
+    private ClientCommandMode _mode;
+    private IMotionControlMode _ctrMode;
+    private IMotionContainer _motion;
+    private IMotionContainer _replacedMotion;
+    private boolean _suspended;
+    private boolean _sessionLost;
+
+    public FRISessionSupervisor(FRIConfiguration friConfiguration, FRIRecoveryPolicy recoveryPolicy, ITaskLogger logger)
+    {
+        this(friConfiguration, recoveryPolicy, logger, new FRIPhaseTimer());
+    }
+
+    public FRISessionSupervisor(FRIConfiguration friConfiguration, FRIRecoveryPolicy recoveryPolicy, ITaskLogger logger, FRIPhaseTimer timer)
+    {
+        _friConfiguration = friConfiguration;
+        _recoveryPolicy = recoveryPolicy;
+        _logger = logger;
+        _timer = timer;
+    }
+
+    /**
+     * Names the supervised robot (e.g. in multi-robot applications); the name
+     * prefixes the log messages and the timed phases.
+     */
+    public void setName(String name)
+    {
+        _prefix = name == null || name.isEmpty() ? "" : "[" + name + "] ";
+    }
+
+    /**
+     * Sets the source of the events of the session and of its components.
+     */
+    public void setEventLog(FRIEventLog.Source events)
+    {
+        _events = events;
+    }
+
+    public FRIEventLog.Source getEventLog()
+    {
+        return _events;
+    }
+
+    /**
+     * Sets the configuration of the hot-standby client, which takes over when
+     * the client disconnects: same robot and ports, other host.
+     */
+    public synchronized void setStandby(FRIConfiguration standby)
+    {
+        _standbyConfiguration = standby;
+    }
+
+    /**
+     * Exchanges the client and its standby, before a session is created to
+     * the standby.
+     */
+    private synchronized void failover()
+    {
+        FRIConfiguration previous = _friConfiguration;
+        _friConfiguration = _standbyConfiguration;
+        _standbyConfiguration = previous;
+        _logger.warn(_prefix + "Failing over from " + previous.getHostName() + " to " + _friConfiguration.getHostName());
+        _events.failover(previous.getHostName(), _friConfiguration.getHostName());
+    }
+
+    /**
+     * Starts {@link #connect(long, TimeUnit)} in the background. The result is
+     * collected with {@link #awaitConnected()}.
+     */
+    public void startConnect(final long timeout, final TimeUnit unit)
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        _pendingConnect = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call()
+            {
+                return connect(timeout, unit);
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for the connection started with
+     * {@link #startConnect(long, TimeUnit)}.
+     *
+     * @return true if the client is connected
+     */
+    public boolean awaitConnected()
+    {
+        if (_pendingConnect == null)
+            return _friSession != null;
+
+        try {
+            return _pendingConnect.get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e) {
+            _logger.error(_prefix + "FRI connection failed: " + e.getCause());
+        }
+        finally {
+            _pendingConnect = null;
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Creates the FRI session and waits until it is ready to switch to command
+     * mode. On timeout, the session is closed.
+     *
+     * @return true if the client is connected
+     */
+    public boolean connect(long timeout, TimeUnit unit)
+    {
+        FRIPhaseTimer.Phase phase = _timer.start(_prefix + "FRISession creation");
+        FRISession friSession = new FRISession(_friConfiguration);
+        _friSession = friSession;
+        phase.stop();
+
+        // wait until FRI session is ready to switch to command mode
+        phase = _timer.start(_prefix + "FRISession await");
+        try
+        {
+            friSession.await(timeout, unit);
+        }
+        catch (final TimeoutException e)
+        {
+            _logger.error(_prefix + e.getLocalizedMessage());
+            close();
+            return false;
+        }
+        finally
+        {
+            phase.stop();
+        }
+
+        _logger.info(_prefix + "FRI connection established.");
+        _events.connected(_friConfiguration.getHostName() + ":" + _friConfiguration.getPortOnController());
+        return true;
+    }
+
+    /**
+     * Runs the PositionHold motion with FRI overlay until the client
+     * disconnects and cannot be recovered.
+     *
+     * @param motionFrame
+     *            the frame to move (flange or tool frame)
+     * @param mode
+     *            the client command mode of the overlay
+     * @param ctrMode
+     *            the control mode of the PositionHold
+     */
+    public void runOverlay(ObjectFrame motionFrame, ClientCommandMode mode, IMotionControlMode ctrMode)
+    {
+        synchronized (this) {
+            _motionFrame = motionFrame;
+            _mode = mode;
+            _ctrMode = ctrMode;
+        }
+
+        while (true) {
+            try {
+                IMotionContainer motion;
+                synchronized (this) {
+                    motion = startOverlay();
+                }
+                awaitFirstCommand(motion);
+                _logger.info(_prefix + "Robot is ready for ROS control.");
+
+                // the motion is replaced when the control mode or the motion frame changes
+                while (true) {
+                    motion.await();
+                    IMotionContainer next = followMotion(motion);
+                    if (next == null)
+                        break;
+                    motion = next;
+                }
+                if (takeSessionLost()) {
+                    if (!disconnected("client lost while the overlay was suspended"))
+                        return;
+                    continue;
+                }
+
+                // a break condition of the contact guard ended the overlay
+                IFiredConditionInfo fired = motion.getFiredBreakConditionInfo();
+                if (_contactGuard == null || fired == null || !_contactGuard.react(getMotionFrame(), fired))
+                    return;
+                continue;
+            }
+            catch (final CommandInvalidException e) {
+                if (!disconnected(e.getLocalizedMessage()))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Tears the overlay down after the client has been disconnected and
+     * recovers the session according to the {@link FRIRecoveryPolicy}.
+     *
+     * @return true if the client is back
+     */
+    private boolean disconnected(String reason)
+    {
+        FRIPhaseTimer.Phase teardown = _timer.start(_prefix + "teardown");
+        synchronized (this) {
+            _motion = null;
+        }
+        _logger.error(_prefix + "ROS has been disconnected.");
+        _events.disconnected(reason);
+        if (!_recoveryPolicy.isEnabled()) {
+            close();
+            teardown.stop();
+            return false;
+        }
+        return recover(getMotionFrame(), teardown);
+    }
+
+    /**
+     * Times the start of an overlay motion until the client commands (the
+     * session is COMMANDING_ACTIVE), or until the motion ends before.
+     */
+    private void awaitFirstCommand(IMotionContainer motion)
+    {
+        FRIPhaseTimer.Phase phase = _timer.start(_prefix + "first commanded cycle");
+        while (!motion.isFinished()) {
+            FRISession friSession = _friSession;
+            if (friSession != null && friSession.getFRIChannelInformation().getFRISessionState() == FRISessionState.COMMANDING_ACTIVE) {
+                phase.stop();
+                return;
+            }
+            try {
+                Thread.sleep(1);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the motion that replaced the ended one, or null if the overlay
+     *         ended or the client was lost while it was suspended
+     */
+    private synchronized IMotionContainer followMotion(IMotionContainer motion)
+    {
+        // a suspended overlay is resumed with a new motion; meanwhile the
+        // session is polled, as no overlay motion fails when the client drops
+        while (_suspended) {
+            if (isSessionLost()) {
+                _logger.warn(_prefix + "Client lost while the overlay was suspended.");
+                _suspended = false;
+                _sessionLost = true;
+                _motion = null;
+                notifyAll();
+                return null;
+            }
+            try {
+                wait(_friConfiguration.getSendPeriodMilliSec());
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (_motion == motion) {
+            _motion = null;
+            return null;
+        }
+        return _motion;
+    }
+
+    private boolean isSessionLost()
+    {
+        FRISession friSession = _friSession;
+        if (friSession == null)
+            return false;
+        try {
+            FRIChannelInformation info = friSession.getFRIChannelInformation();
+            return info.getFRISessionState() == FRISessionState.IDLE || info.getQuality() == FRIConnectionQuality.UNACCEPTABLE;
+        }
+        catch (final RuntimeException e) {
+            // session closed in the meantime
+            return false;
+        }
+    }
+
+    private synchronized boolean takeSessionLost()
+    {
+        boolean lost = _sessionLost;
+        _sessionLost = false;
+        return lost;
+    }
+
+    private IMotionContainer startOverlay()
+    {
+        PositionHold posHold = new PositionHold(_ctrMode, -1, TimeUnit.SECONDS);
+        if (_contactGuard != null)
+            _contactGuard.apply(posHold, _motionFrame);
+        _motion = _motionFrame.moveAsync(posHold.addMotionOverlay(createOverlay()));
+        return _motion;
+    }
+
+    /**
+     * @return the overlay of the client command mode: in
+     *         {@link FRIApplicationConfig#CARTESIAN_POSE}, the client streams
+     *         poses of the motion frame (flange or tool) and the controller
+     *         solves the inverse kinematics, keeping the redundancy unless the
+     *         client commands it. The Cartesian overlay of Sunrise.FRI 2.x is
+     *         created by name, so that the class builds with 1.x too.
+     */
+    private IMotionOverlay createOverlay()
+    {
+        if (_mode != null && _mode == FRIApplicationConfig.CARTESIAN_POSE) {
+            try {
+                return (IMotionOverlay) Class.forName(CARTESIAN_OVERLAY_CLASS).getConstructor(FRISession.class).newInstance(_friSession);
+            }
+            catch (final Exception e) {
+                throw new IllegalStateException("Cannot create the Cartesian pose overlay: " + e);
+            }
+        }
+        return new FRIJointOverlay(_friSession, _mode);
+    }
+
+    /**
+     * Replaces the running overlay motion by one with a new control mode, on
+     * the same session: the new motion is queued and the running one is
+     * cancelled. If no overlay is running (e.g. while recovering), the control
+     * mode is used for the next overlay.
+     *
+     * @param ctrMode
+     *            the new control mode of the PositionHold
+     * @return true if the running overlay was replaced
+     */
+    public synchronized boolean changeControlMode(IMotionControlMode ctrMode)
+    {
+        return changeOverlay(_mode, ctrMode);
+    }
+
+    /**
+     * Replaces the running overlay motion by one with a new client command
+     * mode and control mode, on the same session, as in
+     * {@link #changeControlMode(IMotionControlMode)}: the robot holds its
+     * position in the PositionHold while the overlay is switched.
+     *
+     * @param mode
+     *            the new client command mode of the overlay
+     * @param ctrMode
+     *            the new control mode of the PositionHold
+     * @return true if the running overlay was replaced
+     */
+    public synchronized boolean changeOverlay(ClientCommandMode mode, IMotionControlMode ctrMode)
+    {
+        _mode = mode;
+        _ctrMode = ctrMode;
+        if (_motion == null)
+            return false;
+
+        _replacedMotion = _motion;
+        startOverlay();
+        _replacedMotion.cancel();
+        return true;
+    }
+
+    /**
+     * Moves the overlay to another motion frame (e.g. the frame of a new
+     * tool) on the same session. A PositionHold cannot change its frame and
+     * tools should not be exchanged during a motion, so the overlay is
+     * suspended; once its motion has ended, <code>swap</code> runs (e.g. to
+     * attach the new tool) and a new overlay motion is started on the new
+     * frame. The robot holds its position in between.
+     *
+     * @param motionFrame
+     *            the new motion frame
+     * @param swap
+     *            run while no motion is active, or null
+     * @return true if the running overlay was replaced, false if the overlay
+     *         was not started yet (the first one then uses the new frame)
+     * @throws IllegalStateException
+     *             if the overlay is not running (e.g. while recovering)
+     */
+    public boolean changeMotionFrame(ObjectFrame motionFrame, Runnable swap)
+    {
+        synchronized (this) {
+            if (_motion == null && !_suspended && _mode == null) {
+                if (swap != null)
+                    swap.run();
+                _motionFrame = motionFrame;
+                return false;
+            }
+        }
+
+        suspendOverlay();
+        synchronized (this) {
+            try {
+                if (swap != null)
+                    swap.run();
+                _motionFrame = motionFrame;
+            }
+            finally {
+                // with the previous frame if the swap failed
+                resumeOverlay();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ends the running overlay motion, so that the robot can be moved by the
+     * application (e.g. along a spline) while the session keeps monitoring,
+     * until {@link #resumeOverlay()}. Returns once the overlay motion has
+     * ended. Control mode changes meanwhile apply to the resumed overlay.
+     *
+     * @throws IllegalStateException
+     *             if the overlay is not running (e.g. while recovering) or is
+     *             already suspended
+     */
+    public void suspendOverlay()
+    {
+        IMotionContainer previous;
+        synchronized (this) {
+            if (_suspended)
+                throw new IllegalStateException("overlay suspended");
+            if (_motion == null)
+                throw new IllegalStateException("overlay not running");
+            previous = _motion;
+            _suspended = true;
+        }
+
+        previous.cancel();
+        try {
+            while (!previous.isFinished())
+                Thread.sleep(1);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resumeOverlay();
+            throw new IllegalStateException("interrupted while suspending the overlay");
+        }
+        synchronized (this) {
+            _motion = null;
+        }
+    }
+
+    /**
+     * Starts a new overlay motion after {@link #suspendOverlay()}; does
+     * nothing if the overlay is not suspended, e.g. because the client was lost
+     * meanwhile and the session is being recovered.
+     */
+    public synchronized void resumeOverlay()
+    {
+        if (!_suspended)
+            return;
+        try {
+            startOverlay();
+        }
+        finally {
+            _suspended = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isSuspended()
+    {
+        return _suspended;
+    }
+
+    /**
+     * @return the frame moved by the overlay, or null before
+     *         {@link #runOverlay(ObjectFrame, ClientCommandMode, IMotionControlMode)}
+     */
+    public synchronized ObjectFrame getMotionFrame()
+    {
+        return _motionFrame;
+    }
+
+    /**
+     * Waits until the replaced overlay motion has ended and the session is
+     * commanding again, e.g. after
+     * {@link #changeOverlay(ClientCommandMode, IMotionControlMode)}.
+     *
+     * @param timeoutMilliSec
+     *            maximum time to wait
+     * @return the time waited in ms, or -1 on timeout
+     */
+    public long awaitCommanding(long timeoutMilliSec)
+    {
+        long start = System.nanoTime();
+        long deadline = start + timeoutMilliSec * 1000000L;
+        IMotionContainer replaced;
+        synchronized (this) {
+            replaced = _replacedMotion;
+        }
+        while (System.nanoTime() < deadline) {
+            FRISession friSession = _friSession;
+            if ((replaced == null || replaced.isFinished()) && friSession != null
+                    && friSession.getFRIChannelInformation().getFRISessionState() == FRISessionState.COMMANDING_ACTIVE)
+                return (System.nanoTime() - start) / 1000000L;
+            try {
+                Thread.sleep(1);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Restarts the running overlay motion with the current control mode, e.g.
+     * to apply new break conditions.
+     *
+     * @return true if the running overlay was replaced
+     */
+    public synchronized boolean restartOverlay()
+    {
+        return changeControlMode(_ctrMode);
+    }
+
+    /**
+     * Sets the contact guard whose break conditions are added to the overlay
+     * motions; has to be called before
+     * {@link #runOverlay(ObjectFrame, ClientCommandMode, IMotionControlMode)}.
+     */
+    public void setContactGuard(FRIContactGuard contactGuard)
+    {
+        _contactGuard = contactGuard;
+        contactGuard.setSupervisor(this);
+    }
+
+    /**
+     * @return the contact guard of the overlay, or null
+     */
+    public FRIContactGuard getContactGuard()
+    {
+        return _contactGuard;
+    }
+
+    /**
+     * @return the client command mode of the overlay, or null before
+     *         {@link #runOverlay(ObjectFrame, ClientCommandMode, IMotionControlMode)}
+     */
+    public synchronized ClientCommandMode getClientCommandMode()
+    {
+        return _mode;
+    }
+
+    /**
+     * Holds the position locally and creates new sessions until the client is
+     * back or the retries are exhausted.
+     *
+     * @param teardown
+     *            the teardown phase, stopped once the old session is closed
+     * @return true if the client is connected again
+     */
+    private boolean recover(ObjectFrame motionFrame, FRIPhaseTimer.Phase teardown)
+    {
+        IMotionContainer localHold = motionFrame.moveAsync(new PositionHold(new PositionControlMode(), -1, TimeUnit.SECONDS));
+        close();
+        teardown.stop();
+
+        FRIPhaseTimer.Phase phase = _timer.start(_prefix + "reconnection");
+        boolean connected = false;
+        for (int attempt = 0; attempt < _recoveryPolicy.getMaxRetries() && !connected; attempt++) {
+            // a standby client takes over without backoff, then both are tried in turn
+            boolean standby;
+            synchronized (this) {
+                standby = _standbyConfiguration != null;
+            }
+            if (standby)
+                failover();
+            long backoff = standby && attempt == 0 ? 0 : _recoveryPolicy.getBackoffMilliSec(attempt);
+            _logger.info(_prefix + "Reconnecting to ROS at " + _friConfiguration.getHostName() + " (attempt " + (attempt + 1) + "/"
+                    + _recoveryPolicy.getMaxRetries() + ") in " + backoff + "ms");
+            try {
+                Thread.sleep(backoff);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            connected = connect(_recoveryPolicy.getAwaitTimeoutSec(), TimeUnit.SECONDS);
+            _events.reconnect(attempt + 1, connected);
+        }
+
+        localHold.cancel();
+        phase.stop();
+        if (!connected)
+            _logger.error(_prefix + "ROS could not be reconnected. Leaving");
+        return connected;
+    }
+
+    /**
+     * @return the configuration of the current client, which changes on a
+     *         failover to the standby
+     */
+    public FRIConfiguration getConfiguration()
+    {
+        return _friConfiguration;
+    }
+
+    public FRISession getSession()
+    {
+        return _friSession;
+    }
+
+    public FRIPhaseTimer getTimer()
+    {
+        return _timer;
+    }
+
+    public synchronized void close()
+    {
+        if (_friSession != null) {
+            _friSession.close();
+            _friSession = null;
+        }
+    }
+}
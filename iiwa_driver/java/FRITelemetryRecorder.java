@@ -0,0 +1,208 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.kuka.roboticsAPI.deviceModel.JointPosition;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.sensorModel.TorqueSensorData;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Records what the controller executes during the overlay motion into a
+ * fixed-size, memory-mapped binary file (a ring buffer that keeps the last
+ * <code>capacity</code> samples), to be pulled off the controller afterwards
+ * (see <code>iiwa_driver/scripts/read_telemetry.py</code>).
+ *
+ * Samples are taken about every send period by a background thread, which
+ * polls the getters of the LBR asynchronously to the controller cycle: a
+ * sample is not one controller cycle (its values may come from consecutive
+ * cycles), cycles can be missed or sampled twice, and a late thread leaves a
+ * gap. Every record therefore carries the time at which its getters returned,
+ * on the {@link FRIClock} like the additional outputs, and how long they took,
+ * so the gaps and the spread show in the file. The getters of the Sunrise API
+ * allocate their results; the recorder itself does not allocate after
+ * {@link #start(FRISessionSupervisor)}. Exact per-cycle data are only
+ * available on the client, from the FRI messages.
+ *
+ * The commanded torque is read with <code>LBR.getCommandedTorque()</code>
+ * where the Sunrise release provides it, and recorded as NaN otherwise.
+ *
+ * File layout (little endian):
+ *
+ * <pre>
+ * header (64 bytes):
+ *   int32  magic 'FRIT', int32 version, int32 joint count, int32 capacity,
+ *   int32  record size, int32 send period [ms], int64 start time [ns since epoch],
+ *   int64  number of samples written (the ring buffer index is count % capacity)
+ * record:
+ *   int64  time at which the values were read [ns since epoch]
+ *   int64  time taken to read them [ns]
+ *   double measured joint position [rad] x joint count
+ *   double commanded joint position [rad] x joint count
+ *   double measured torque [Nm] x joint count
+ *   double external torque [Nm] x joint count
+ *   double commanded torque [Nm] x joint count
+ * </pre>
+ */
+public class FRITelemetryRecorder extends FRIPeriodicTask
+{
+    private static final int MAGIC = 0x46524954; // 'FRIT'
+    private static final int VERSION = 2;
+    private static final int COLUMNS = 5;
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT_OFFSET = 32;
+
+    private final LBR _lbr;
+    private final ITaskLogger _logger;
+    private final int _capacity;
+    private final File _file;
+    private final int _jointCount;
+    private final int _recordSize;
+    private final Method _commandedTorque;
+
+    private RandomAccessFile _raf;
+    private MappedByteBuffer _buffer;
+    private long _count;
+
+    /**
+     * @param lbr
+     *            the robot to record
+     * @param logger
+     *            logger
+     * @param capacity
+     *            number of samples kept in the file
+     * @param file
+     *            the file to record to; null disables the recorder
+     */
+    public FRITelemetryRecorder(LBR lbr, ITaskLogger logger, int capacity, File file)
+    {
+        super("FRITelemetryRecorder");
+        _lbr = lbr;
+        _logger = logger;
+        _capacity = capacity;
+        _file = file;
+        _jointCount = lbr.getJointCount();
+        _recordSize = 2 * 8 + COLUMNS * 8 * _jointCount;
+
+        Method commandedTorque = null;
+        try {
+            commandedTorque = LBR.class.getMethod("getCommandedTorque");
+        }
+        catch (final NoSuchMethodException e) {
+            // not provided by this Sunrise release: recorded as NaN
+        }
+        _commandedTorque = commandedTorque;
+    }
+
+    public boolean isEnabled()
+    {
+        return _file != null;
+    }
+
+    /**
+     * Maps the file and starts recording at the send period of the session.
+     * Does nothing if the recorder is disabled.
+     */
+    public synchronized void start(FRISessionSupervisor supervisor)
+    {
+        if (!isEnabled() || isRunning())
+            return;
+
+        int sendPeriod = supervisor.getConfiguration().getSendPeriodMilliSec();
+        long size = HEADER_SIZE + (long) _recordSize * _capacity;
+        try {
+            _raf = new RandomAccessFile(_file, "rw");
+            _raf.setLength(size);
+            _buffer = _raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        catch (final IOException e) {
+            _logger.error("Cannot map telemetry file " + _file.getPath() + ": " + e.getLocalizedMessage());
+            closeFile();
+            return;
+        }
+        _buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        _count = 0;
+        _buffer.putInt(0, MAGIC);
+        _buffer.putInt(4, VERSION);
+        _buffer.putInt(8, _jointCount);
+        _buffer.putInt(12, _capacity);
+        _buffer.putInt(16, _recordSize);
+        _buffer.putInt(20, sendPeriod);
+        _buffer.putLong(24, FRIClock.epochNanos());
+        _buffer.putLong(COUNT_OFFSET, _count);
+
+        _logger.info("Recording telemetry to " + _file.getPath() + " (" + _capacity + " samples, " + size / 1024 + "kB)"
+                + (_commandedTorque == null ? ", commanded torque not available" : ""));
+        startPeriodic(sendPeriod * 1000000L);
+    }
+
+    @Override
+    protected void cycle(long now)
+    {
+        long before = System.nanoTime();
+        JointPosition measured = _lbr.getCurrentJointPosition();
+        JointPosition commanded = _lbr.getCommandedJointPosition();
+        double[] measuredTorque = _lbr.getMeasuredTorque().getTorqueValues();
+        double[] externalTorque = _lbr.getExternalTorque().getTorqueValues();
+        double[] commandedTorque = getCommandedTorque();
+        long after = System.nanoTime();
+
+        int offset = HEADER_SIZE + (int) (_count % _capacity) * _recordSize;
+        _buffer.putLong(offset, FRIClock.epochNanos(after));
+        _buffer.putLong(offset + 8, after - before);
+        offset += 16;
+        for (int i = 0; i < _jointCount; i++) {
+            _buffer.putDouble(offset, measured.get(i));
+            _buffer.putDouble(offset + 8 * _jointCount, commanded.get(i));
+            _buffer.putDouble(offset + 16 * _jointCount, measuredTorque[i]);
+            _buffer.putDouble(offset + 24 * _jointCount, externalTorque[i]);
+            _buffer.putDouble(offset + 32 * _jointCount, commandedTorque != null ? commandedTorque[i] : Double.NaN);
+            offset += 8;
+        }
+
+        // the count is written last, so a reader never sees a partial record as valid
+        _count++;
+        _buffer.putLong(COUNT_OFFSET, _count);
+    }
+
+    private double[] getCommandedTorque()
+    {
+        if (_commandedTorque == null)
+            return null;
+        try {
+            return ((TorqueSensorData) _commandedTorque.invoke(_lbr, NO_ARGS)).getTorqueValues();
+        }
+        catch (final Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void finish()
+    {
+        _buffer.force();
+        _logger.info("Telemetry recorder stopped after " + _count + " samples");
+        closeFile();
+    }
+
+    private void closeFile()
+    {
+        if (_raf != null) {
+            try {
+                _raf.close();
+            }
+            catch (final IOException e) {
+                _logger.warn("Cannot close telemetry file: " + e.getLocalizedMessage());
+            }
+            _raf = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.geometricModel.Tool;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Tools of an FRI application, created once from their templates when the
+ * application starts, of which one at a time is attached to the flange. The
+ * load data of the attached tool is taken into account by the controller, and
+ * its default motion frame is the frame moved by the overlay.
+ *
+ * Handler of the <code>tool</code> command of the {@link FRICommandServer}:
+ *
+ * <pre>
+ * tool            attached and available tools
+ * tool &lt;name&gt;     attach a tool (none: flange only)
+ * </pre>
+ *
+ * While the overlay runs, the tool is changed on the same FRI session (see
+ * {@link FRISessionSupervisor#changeMotionFrame(ObjectFrame, Runnable)}).
+ */
+public class FRIToolRegistry implements FRICommandServer.Handler
+{
+    public static final String NONE = "none";
+
+    private final LBR _lbr;
+    private final ITaskLogger _logger;
+    private final Map<String, Tool> _tools = new LinkedHashMap<String, Tool>();
+    private FRISessionSupervisor _supervisor;
+    private String _attached = NONE;
+
+    /**
+     * Creates the tools from their templates; templates that cannot be
+     * created are logged and skipped.
+     *
+     * @param app
+     *            the application
+     * @param lbr
+     *            the robot
+     * @param templates
+     *            names of the tool templates
+     */
+    public FRIToolRegistry(RoboticsAPIApplication app, LBR lbr, String[] templates)
+    {
+        _lbr = lbr;
+        _logger = app.getLogger();
+        for (String template : templates) {
+            try {
+                Tool tool = app.getApplicationData().createFromTemplate(template);
+                _tools.put(template, tool);
+            }
+            catch (final RuntimeException e) {
+                _logger.error("Cannot create tool '" + template + "': " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Sets the supervisor whose overlay follows the tool changes.
+     */
+    public synchronized void setSupervisor(FRISessionSupervisor supervisor)
+    {
+        _supervisor = supervisor;
+    }
+
+    /**
+     * Attaches a tool, without an overlay running.
+     *
+     * @param name
+     *            the tool, or {@link #NONE}
+     * @throws IllegalArgumentException
+     *             if the tool is unknown
+     */
+    public synchronized void attach(String name)
+    {
+        checkTool(name);
+        swap(name);
+    }
+
+    /**
+     * @return the default motion frame of the attached tool, or the flange
+     */
+    public synchronized ObjectFrame getMotionFrame()
+    {
+        Tool tool = _tools.get(_attached);
+        return tool != null ? tool.getDefaultMotionFrame() : _lbr.getFlange();
+    }
+
+    public synchronized String getAttached()
+    {
+        return _attached;
+    }
+
+    @Override
+    public synchronized String handle(String[] args)
+    {
+        if (args.length == 0)
+            return toString();
+        if (args.length > 1)
+            throw new IllegalArgumentException("expected one tool");
+
+        final String name = args[0];
+        checkTool(name);
+        if (name.equals(_attached))
+            return toString();
+
+        Tool tool = _tools.get(name);
+        ObjectFrame frame = tool != null ? tool.getDefaultMotionFrame() : _lbr.getFlange();
+        long start = System.nanoTime();
+        Runnable swap = new Runnable() {
+            @Override
+            public void run()
+            {
+                swap(name);
+            }
+        };
+        if (_supervisor != null)
+            _supervisor.changeMotionFrame(frame, swap);
+        else
+            swap.run();
+        if (!name.equals(_attached))
+            throw new IllegalStateException("tool '" + name + "' could not be attached");
+
+        _logger.info("Tool changed to '" + name + "' in " + (System.nanoTime() - start) / 1000000L + "ms");
+        if (_supervisor != null)
+            _supervisor.getEventLog().parameter("tool", name);
+        return toString();
+    }
+
+    private void checkTool(String name)
+    {
+        if (!name.equals(NONE) && !_tools.containsKey(name))
+            throw new IllegalArgumentException("unknown tool " + name);
+    }
+
+    /**
+     * Detaches the attached tool and attaches the new one; on failure, the
+     * previous tool is attached again.
+     */
+    private synchronized void swap(String name)
+    {
+        Tool previous = _tools.get(_attached);
+        Tool next = _tools.get(name);
+        if (previous != null)
+            previous.detach();
+        try {
+            if (next != null)
+                next.attachTo(_lbr.getFlange());
+            _attached = name;
+        }
+        catch (final RuntimeException e) {
+            _logger.error("Cannot attach tool '" + name + "': " + e.getLocalizedMessage());
+            if (previous != null)
+                previous.attachTo(_lbr.getFlange());
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "tool " + _attached + " | available " + _tools.keySet() + " " + NONE;
+    }
+}
@@ -0,0 +1,312 @@
+package application;
+
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.ptp;
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.spl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kuka.roboticsAPI.deviceModel.JointPosition;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.motionModel.IMotion;
+import com.kuka.roboticsAPI.motionModel.IMotionContainer;
+import com.kuka.roboticsAPI.motionModel.PTP;
+import com.kuka.roboticsAPI.motionModel.SPL;
+import com.kuka.roboticsAPI.motionModel.Spline;
+import com.kuka.roboticsAPI.motionModel.SplineJP;
+import com.kuka.task.ITaskLogger;
+
+/**
+ * Batched trajectory execution: the client uploads a complete
+ * time-parameterized trajectory in one command, and the controller executes it
+ * locally as one spline motion, without setpoints streamed over FRI. The
+ * overlay is suspended meanwhile (see
+ * {@link FRISessionSupervisor#suspendOverlay()}); the FRI session keeps
+ * monitoring, and the overlay is resumed once the trajectory has ended.
+ *
+ * Handler of the <code>trajectory</code> command of the
+ * {@link FRICommandServer}:
+ *
+ * <pre>
+ * trajectory                                  state and progress
+ * trajectory joint &lt;t q1 .. qn&gt;...            joint trajectory [s, rad]
+ * trajectory cartesian &lt;t x y z a b c&gt;...     motion frame in the robot base [s, m, rad]
+ * trajectory cancel                           stop the running trajectory
+ * </pre>
+ *
+ * The time stamps are relative to the start of the trajectory and strictly
+ * increasing; a first point at t = 0 is the start and is skipped, as the
+ * spline starts from the position the robot holds once the overlay is
+ * suspended. Sunrise plans the velocity profile of a spline itself, so the
+ * time stamps only set the velocity of every segment (relative joint velocity,
+ * or Cartesian velocity, scaled by Sunrise) and the timing is approximate: the
+ * trajectory is done when its motion has finished, which is what the state
+ * reports, and the time reported is the time it actually took. The break
+ * conditions of the contact guard only apply to the overlay.
+ */
+public class FRITrajectoryExecutor implements FRICommandServer.Handler, Runnable
+{
+    public enum State
+    {
+        IDLE, RUNNING, DONE, CANCELLED, FAILED
+    }
+
+    // lowest Cartesian velocity of a segment (e.g. for rotations only) [mm/s]
+    private static final double MIN_CART_VELOCITY = 1.;
+
+    private final LBR _lbr;
+    private final double[] _maxJointVelocity;
+    private final ITaskLogger _logger;
+    private FRISessionSupervisor _supervisor;
+
+    // trajectory being executed
+    private IMotion _spline;
+    private String _type;
+    private int _points;
+    private double _duration; // nominal, of the time stamps
+    private long _startNanos;
+    private long _endNanos;
+    private State _state = State.IDLE;
+    private String _error;
+    private IMotionContainer _container;
+
+    /**
+     * @param lbr
+     *            the robot
+     * @param maxJointVelocity
+     *            maximum velocity of every joint [deg/s], the reference of the
+     *            relative velocities of joint trajectories
+     * @param logger
+     *            logger
+     */
+    public FRITrajectoryExecutor(LBR lbr, double[] maxJointVelocity, ITaskLogger logger)
+    {
+        if (maxJointVelocity.length != lbr.getJointCount())
+            throw new IllegalArgumentException("expected " + lbr.getJointCount() + " joint velocities");
+        _lbr = lbr;
+        _maxJointVelocity = new double[maxJointVelocity.length];
+        for (int i = 0; i < maxJointVelocity.length; i++)
+            _maxJointVelocity[i] = Math.toRadians(maxJointVelocity[i]);
+        _logger = logger;
+    }
+
+    /**
+     * Sets the supervisor whose overlay is suspended during the trajectories.
+     */
+    public synchronized void setSupervisor(FRISessionSupervisor supervisor)
+    {
+        _supervisor = supervisor;
+    }
+
+    @Override
+    public String handle(String[] args)
+    {
+        if (args.length == 0)
+            return toString();
+
+        String command = args[0].toLowerCase();
+        if (command.equals("cancel") && args.length == 1) {
+            IMotionContainer container;
+            synchronized (this) {
+                if (_state != State.RUNNING)
+                    throw new IllegalStateException("no trajectory running");
+                _state = State.CANCELLED;
+                container = _container;
+            }
+            if (container != null)
+                container.cancel();
+            return toString();
+        }
+
+        double[][] values;
+        if (command.equals("joint"))
+            values = parse(args, _lbr.getJointCount() + 1);
+        else if (command.equals("cartesian"))
+            values = parse(args, 7);
+        else
+            throw new IllegalArgumentException("invalid arguments for trajectory");
+        int points = values.length;
+        double duration = values[values.length - 1][0];
+
+        FRISessionSupervisor supervisor;
+        synchronized (this) {
+            if (_state == State.RUNNING)
+                throw new IllegalStateException("trajectory running");
+            if (_supervisor == null)
+                throw new IllegalStateException("overlay not running");
+            supervisor = _supervisor;
+        }
+
+        // the robot holds its position until the spline starts, from there
+        supervisor.suspendOverlay();
+        IMotion spline;
+        try {
+            spline = command.equals("joint") ? createJointSpline(values) : createCartesianSpline(values);
+        }
+        catch (final RuntimeException e) {
+            supervisor.resumeOverlay();
+            throw e;
+        }
+        synchronized (this) {
+            _spline = spline;
+            _type = command;
+            _points = points;
+            _duration = duration;
+            _startNanos = 0;
+            _endNanos = 0;
+            _error = null;
+            _container = null;
+            _state = State.RUNNING;
+            new Thread(this, "FRITrajectoryExecutor").start();
+        }
+        _logger.info("Executing " + command + " trajectory: " + points + " points, " + String.format("%.3fs", duration));
+        return toString();
+    }
+
+    @Override
+    public void run()
+    {
+        IMotion spline;
+        FRISessionSupervisor supervisor;
+        synchronized (this) {
+            spline = _spline;
+            supervisor = _supervisor;
+        }
+
+        State state = State.DONE;
+        String error = null;
+        try {
+            ObjectFrame motionFrame = supervisor.getMotionFrame();
+            IMotionContainer container = motionFrame.moveAsync(spline);
+            boolean cancelled;
+            synchronized (this) {
+                _container = container;
+                _startNanos = System.nanoTime();
+                cancelled = _state == State.CANCELLED;
+            }
+            if (cancelled)
+                container.cancel();
+            container.await();
+        }
+        catch (final RuntimeException e) {
+            state = State.FAILED;
+            error = e.getLocalizedMessage();
+        }
+        finally {
+            synchronized (this) {
+                if (_state == State.RUNNING)
+                    _state = state;
+                _error = error;
+                if (_startNanos != 0)
+                    _endNanos = System.nanoTime();
+                _container = null;
+                _spline = null;
+            }
+            supervisor.resumeOverlay();
+        }
+
+        if (error != null)
+            _logger.error("Trajectory failed: " + error);
+        else
+            _logger.info(toString());
+    }
+
+    /**
+     * @return the points of the trajectory, each with the time stamp first;
+     *         the start point (t = 0) is dropped
+     */
+    private static double[][] parse(String[] args, int size)
+    {
+        int count = args.length - 1;
+        if (count == 0 || count % size != 0)
+            throw new IllegalArgumentException("expected points of " + size + " values (time stamp first)");
+
+        List<double[]> points = new ArrayList<double[]>();
+        double last = 0.;
+        for (int i = 0; i < count / size; i++) {
+            double[] point = new double[size];
+            for (int k = 0; k < size; k++) {
+                point[k] = Double.parseDouble(args[1 + i * size + k]);
+                if (Double.isNaN(point[k]) || Double.isInfinite(point[k]))
+                    throw new IllegalArgumentException("invalid value " + args[1 + i * size + k]);
+            }
+            if (i == 0 && point[0] == 0.)
+                continue;
+            if (!(point[0] > last))
+                throw new IllegalArgumentException("time stamps not increasing at point " + (i + 1));
+            last = point[0];
+            points.add(point);
+        }
+        if (points.isEmpty())
+            throw new IllegalArgumentException("no point after the start");
+        return points.toArray(new double[points.size()][]);
+    }
+
+    private SplineJP createJointSpline(double[][] values)
+    {
+        int joints = _lbr.getJointCount();
+        JointPosition previous = _lbr.getCurrentJointPosition();
+        double previousTime = 0.;
+        PTP[] segments = new PTP[values.length];
+        for (int i = 0; i < values.length; i++) {
+            JointPosition position = new JointPosition(joints);
+            double velocity = 0.;
+            for (int j = 0; j < joints; j++) {
+                position.set(j, values[i][j + 1]);
+                velocity = Math.max(velocity, Math.abs(position.get(j) - previous.get(j)) / (values[i][0] - previousTime) / _maxJointVelocity[j]);
+            }
+            if (velocity > 1.)
+                throw new IllegalArgumentException(String.format("segment %d exceeds the joint velocities by %.0f%%", i + 1, (velocity - 1.) * 100.));
+            segments[i] = ptp(position).setJointVelocityRel(Math.max(velocity, 0.01));
+            previous = position;
+            previousTime = values[i][0];
+        }
+        return new SplineJP(segments);
+    }
+
+    private Spline createCartesianSpline(double[][] values)
+    {
+        Frame previous = _lbr.getCurrentCartesianPosition(motionFrame(), _lbr.getRootFrame());
+        double previousTime = 0.;
+        SPL[] segments = new SPL[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Frame frame = new Frame(_lbr.getRootFrame(), values[i][1] * 1000., values[i][2] * 1000., values[i][3] * 1000., values[i][4], values[i][5],
+                    values[i][6]);
+            double distance = Math.sqrt(Math.pow(frame.getX() - previous.getX(), 2) + Math.pow(frame.getY() - previous.getY(), 2)
+                    + Math.pow(frame.getZ() - previous.getZ(), 2));
+            segments[i] = spl(frame).setCartVelocity(Math.max(distance / (values[i][0] - previousTime), MIN_CART_VELOCITY));
+            previous = frame;
+            previousTime = values[i][0];
+        }
+        return new Spline(segments);
+    }
+
+    /**
+     * @return the motion frame of the overlay, the frame the Cartesian points
+     *         are given for
+     */
+    private synchronized ObjectFrame motionFrame()
+    {
+        ObjectFrame frame = _supervisor != null ? _supervisor.getMotionFrame() : null;
+        return frame != null ? frame : _lbr.getFlange();
+    }
+
+    /**
+     * The state is that of the motion: a trajectory is RUNNING until its
+     * motion has finished, whatever its nominal duration.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        if (_state == State.IDLE)
+            return "trajectory IDLE";
+        String text = String.format("trajectory %s | %s %d points | nominal %.3fs", _state, _type, _points, _duration);
+        if (_startNanos != 0) {
+            double elapsed = ((_endNanos != 0 ? _endNanos : System.nanoTime()) - _startNanos) / 1e9;
+            text += String.format(_endNanos != 0 ? " | took %.3fs" : " | running for %.3fs", elapsed);
+        }
+        return _error != null ? text + " | " + _error : text;
+    }
+}
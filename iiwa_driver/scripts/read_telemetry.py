@@ -0,0 +1,88 @@
+#!/usr/bin/env python
+# encoding: utf-8
+#|
+#|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+#|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+#|              Bernardo Fichera
+#|              Walid Amanhoud
+#|    email:    costashatz@gmail.com
+#|              bernardo.fichera@epfl.ch
+#|              walid.amanhoud@epfl.ch
+#|    Other contributors:
+#|              Yoan Mollard (yoan@aubrune.eu)
+#|    website:  lasa.epfl.ch
+#|
+#|    This file is part of iiwa_ros.
+#|
+#|    iiwa_ros is free software: you can redistribute it and/or modify
+#|    it under the terms of the GNU General Public License as published by
+#|    the Free Software Foundation, either version 3 of the License, or
+#|    (at your option) any later version.
+#|
+#|    iiwa_ros is distributed in the hope that it will be useful,
+#|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+#|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+#|    GNU General Public License for more details.
+#|
+"""Reads a telemetry file written by FRITelemetryRecorder (see iiwa_driver/java)
+and prints it as CSV (oldest sample first).
+
+The controller samples asynchronously to its cycle: t_ms is the time at which
+the values were read, read_us how long reading them took. Gaps in t_ms are
+missed periods. tau_cmd is NaN where the controller does not provide it.
+
+Usage: read_telemetry.py fri_telemetry.bin > telemetry.csv
+"""
+import struct
+import sys
+
+HEADER = struct.Struct('<iiiiiiqq')
+MAGIC = 0x46524954
+VERSION = 2
+COLUMNS = 5
+HEADER_SIZE = 64
+
+
+def read_telemetry(path):
+    """Returns the header as a dict and the samples (oldest first) as tuples
+    (stamp_ns, read_ns, q, q_cmd, tau, tau_ext, tau_cmd), stamps in ns since
+    the epoch."""
+    with open(path, 'rb') as f:
+        data = f.read()
+
+    magic, version, joints, capacity, record_size, send_period, start_ns, count = HEADER.unpack_from(data, 0)
+    if magic != MAGIC or version != VERSION:
+        raise ValueError('%s is not a telemetry file (version %d)' % (path, VERSION))
+
+    record = struct.Struct('<qq%dd' % (COLUMNS * joints))
+    assert record.size == record_size
+
+    # unroll the ring buffer
+    n = min(count, capacity)
+    start = count % capacity if count > capacity else 0
+    samples = []
+    for k in range(n):
+        values = record.unpack_from(data, HEADER_SIZE + ((start + k) % capacity) * record_size)
+        samples.append(values[:2] + tuple(values[2 + j * joints:2 + (j + 1) * joints] for j in range(COLUMNS)))
+    return {'joints': joints, 'send_period': send_period, 'start_ns': start_ns, 'count': count}, samples
+
+
+def main():
+    if len(sys.argv) != 2:
+        sys.stderr.write(__doc__)
+        sys.exit(1)
+
+    info, samples = read_telemetry(sys.argv[1])
+    joints = info['joints']
+    sys.stderr.write('%d samples (%d written), send period %dms\n' % (len(samples), info['count'], info['send_period']))
+
+    columns = ['stamp_ns', 't_ms', 'read_us'] + ['%s_%d' % (name, i + 1) for name in ('q', 'q_cmd', 'tau', 'tau_ext', 'tau_cmd')
+                                                 for i in range(joints)]
+    print(','.join(columns))
+    for s in samples:
+        values = [(s[0] - info['start_ns']) / 1e6, s[1] / 1e3] + [v for field in s[2:] for v in field]
+        print(','.join(['%d' % s[0]] + ['%.6f' % v for v in values]))
+
+
+if __name__ == '__main__':
+    main()
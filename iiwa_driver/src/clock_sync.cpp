@@ -0,0 +1,124 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#include <iiwa_driver/clock_sync.h>
+
+#include <algorithm>
+#include <cmath>
+
+namespace iiwa_ros {
+    namespace {
+        // exchanges whose round trip exceeds the lowest one by more than this are left out of the fit [ns]
+        const double kRoundTripTolerance = 100000.;
+        // an offset this far from the estimate means the robot application restarted its clock [ns]
+        const double kMaxOffsetJump = 10000000.;
+        // the drift is only fitted over exchanges spanning at least this [ns]
+        const double kMinDriftSpan = 1e9;
+    } // namespace
+
+    int64_t ClockSync::Estimate::to_local(int64_t controller_time) const
+    {
+        // controller_time = local + offset + drift * (local - reference)
+        return reference + static_cast<int64_t>((controller_time - reference - offset) / (1. + drift));
+    }
+
+    ClockSync::ClockSync(size_t window) : _exchanges(), _next(0)
+    {
+        _exchanges.reserve(window);
+    }
+
+    bool ClockSync::add(int64_t t1, int64_t t2, int64_t t3, int64_t t4)
+    {
+        double round_trip = static_cast<double>((t4 - t1) - (t3 - t2));
+        if (round_trip < 0.)
+            return false;
+
+        Exchange exchange;
+        exchange.local = t1 + (t4 - t1) / 2;
+        exchange.offset = ((t2 - t1) + (t3 - t4)) / 2.;
+        exchange.round_trip = round_trip;
+
+        if (_estimate.valid && round_trip < kMaxOffsetJump) {
+            double predicted = _estimate.offset + _estimate.drift * (exchange.local - _estimate.reference);
+            if (std::abs(exchange.offset - predicted) > kMaxOffsetJump)
+                reset();
+        }
+
+        if (_exchanges.size() < _exchanges.capacity())
+            _exchanges.push_back(exchange);
+        else
+            _exchanges[_next] = exchange;
+        _next = (_next + 1) % _exchanges.capacity();
+        _update();
+        return true;
+    }
+
+    void ClockSync::reset()
+    {
+        _exchanges.clear();
+        _next = 0;
+        _estimate = Estimate();
+    }
+
+    void ClockSync::_update()
+    {
+        double min_round_trip = _exchanges.front().round_trip;
+        for (const Exchange& e : _exchanges)
+            min_round_trip = std::min(min_round_trip, e.round_trip);
+        double max_round_trip = min_round_trip + kRoundTripTolerance;
+
+        // least squares fit of the offset over the local time, around the mean local time
+        size_t n = 0;
+        double mean_local = 0., mean_offset = 0.;
+        int64_t origin = _exchanges.front().local;
+        for (const Exchange& e : _exchanges) {
+            if (e.round_trip > max_round_trip)
+                continue;
+            n++;
+            mean_local += static_cast<double>(e.local - origin);
+            mean_offset += e.offset;
+        }
+        mean_local /= n;
+        mean_offset /= n;
+
+        double sxx = 0., sxy = 0., min_local = 0., max_local = 0.;
+        bool first = true;
+        for (const Exchange& e : _exchanges) {
+            if (e.round_trip > max_round_trip)
+                continue;
+            double x = static_cast<double>(e.local - origin) - mean_local;
+            sxx += x * x;
+            sxy += x * (e.offset - mean_offset);
+            min_local = first ? x : std::min(min_local, x);
+            max_local = first ? x : std::max(max_local, x);
+            first = false;
+        }
+
+        _estimate.valid = true;
+        _estimate.reference = origin + static_cast<int64_t>(mean_local);
+        _estimate.offset = mean_offset;
+        _estimate.drift = (n > 2 && max_local - min_local >= kMinDriftSpan) ? sxy / sxx : 0.;
+        _estimate.round_trip = min_round_trip;
+    }
+} // namespace iiwa_ros
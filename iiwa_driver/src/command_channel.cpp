@@ -0,0 +1,144 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|             bernardo.fichera@epfl.ch
+//|             walid.amanhoud@epfl.ch
+//|    website: lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#include <iiwa_driver/command_channel.h>
+
+#include <arpa/inet.h>
+#include <netdb.h>
+#include <netinet/in.h>
+#include <netinet/tcp.h>
+#include <sys/socket.h>
+#include <sys/time.h>
+#include <unistd.h>
+
+#include <cerrno>
+#include <cstring>
+
+namespace iiwa_ros {
+    CommandChannel::CommandChannel() : _port(0), _timeout(5.), _socket(-1) {}
+
+    CommandChannel::~CommandChannel()
+    {
+        close();
+    }
+
+    void CommandChannel::set_server(const std::string& host, int port, double timeout)
+    {
+        close();
+        _host = host;
+        _port = port;
+        _timeout = timeout;
+    }
+
+    bool CommandChannel::enabled() const
+    {
+        return _port > 0;
+    }
+
+    bool CommandChannel::send(const std::string& command, std::string& reply)
+    {
+        if (!enabled()) {
+            reply = "command channel disabled";
+            return false;
+        }
+
+        // one retry with a fresh connection, e.g. after the robot application was restarted
+        for (int attempt = 0; attempt < 2; attempt++) {
+            std::string error;
+            if (_socket < 0 && !_connect(error)) {
+                reply = error;
+                return false;
+            }
+
+            std::string line = command + "\n";
+            if (::send(_socket, line.c_str(), line.size(), MSG_NOSIGNAL) == static_cast<ssize_t>(line.size()) && _read_line(reply, error))
+                return true;
+
+            reply = error.empty() ? std::string("send failed: ") + std::strerror(errno) : error;
+            close();
+        }
+        return false;
+    }
+
+    void CommandChannel::close()
+    {
+        if (_socket >= 0) {
+            ::close(_socket);
+            _socket = -1;
+        }
+        _buffer.clear();
+    }
+
+    bool CommandChannel::_connect(std::string& error)
+    {
+        addrinfo hints{};
+        hints.ai_family = AF_INET;
+        hints.ai_socktype = SOCK_STREAM;
+        addrinfo* result = nullptr;
+        if (getaddrinfo(_host.c_str(), std::to_string(_port).c_str(), &hints, &result) != 0 || result == nullptr) {
+            error = "cannot resolve " + _host;
+            return false;
+        }
+
+        _socket = socket(result->ai_family, result->ai_socktype, result->ai_protocol);
+        if (_socket < 0) {
+            freeaddrinfo(result);
+            error = std::string("cannot create socket: ") + std::strerror(errno);
+            return false;
+        }
+
+        timeval tv;
+        tv.tv_sec = static_cast<time_t>(_timeout);
+        tv.tv_usec = static_cast<suseconds_t>((_timeout - tv.tv_sec) * 1e6);
+        setsockopt(_socket, SOL_SOCKET, SO_RCVTIMEO, &tv, sizeof(tv));
+        setsockopt(_socket, SOL_SOCKET, SO_SNDTIMEO, &tv, sizeof(tv));
+        int flag = 1;
+        setsockopt(_socket, IPPROTO_TCP, TCP_NODELAY, &flag, sizeof(flag));
+
+        int ret = ::connect(_socket, result->ai_addr, result->ai_addrlen);
+        freeaddrinfo(result);
+        if (ret != 0) {
+            error = "cannot connect to " + _host + ":" + std::to_string(_port) + ": " + std::strerror(errno);
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    bool CommandChannel::_read_line(std::string& line, std::string& error)
+    {
+        size_t pos;
+        while ((pos = _buffer.find('\n')) == std::string::npos) {
+            char data[256];
+            ssize_t n = recv(_socket, data, sizeof(data), 0);
+            if (n <= 0) {
+                error = (n == 0) ? std::string("connection closed by the robot") : std::string("no reply: ") + std::strerror(errno);
+                return false;
+            }
+            _buffer.append(data, n);
+        }
+
+        line = _buffer.substr(0, pos);
+        _buffer.erase(0, pos + 1);
+        return true;
+    }
+} // namespace iiwa_ros
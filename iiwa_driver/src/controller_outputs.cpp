@@ -0,0 +1,160 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#include <iiwa_driver/controller_outputs.h>
+
+#include <arpa/inet.h>
+#include <netinet/in.h>
+#include <sys/select.h>
+#include <sys/socket.h>
+#include <unistd.h>
+
+#include <cerrno>
+#include <cstring>
+
+namespace iiwa_ros {
+    namespace {
+        const uint32_t kMagic = 0x46524941; // 'FRIA'
+        const uint32_t kVersion = 3;
+        const size_t kSize = 136;
+        const uint32_t kSyncMagic = 0x46524953; // 'FRIS'
+        const uint32_t kSyncVersion = 1;
+        const size_t kSyncRequestSize = 24;
+        const size_t kSyncReplySize = 40;
+
+        // the datagram is little endian, as the hosts the driver runs on
+        template <typename T>
+        T read_le(const unsigned char* data)
+        {
+            T value;
+            std::memcpy(&value, data, sizeof(T));
+            return value;
+        }
+
+        template <typename T>
+        void write_le(unsigned char* data, T value)
+        {
+            std::memcpy(data, &value, sizeof(T));
+        }
+    } // namespace
+
+    ControllerOutputs::ControllerOutputs() : _socket(-1) {}
+
+    ControllerOutputs::~ControllerOutputs()
+    {
+        close();
+    }
+
+    bool ControllerOutputs::open(int port, std::string& error)
+    {
+        close();
+        _socket = ::socket(AF_INET, SOCK_DGRAM, 0);
+        if (_socket < 0) {
+            error = std::strerror(errno);
+            return false;
+        }
+
+        sockaddr_in address;
+        std::memset(&address, 0, sizeof(address));
+        address.sin_family = AF_INET;
+        address.sin_addr.s_addr = htonl(INADDR_ANY);
+        address.sin_port = htons(port);
+        if (::bind(_socket, reinterpret_cast<sockaddr*>(&address), sizeof(address)) < 0) {
+            error = std::strerror(errno);
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    bool ControllerOutputs::is_open() const
+    {
+        return _socket >= 0;
+    }
+
+    bool ControllerOutputs::send_sync_request(const std::string& host, int port, uint64_t sequence, int64_t t1)
+    {
+        if (_socket < 0)
+            return false;
+
+        sockaddr_in address;
+        std::memset(&address, 0, sizeof(address));
+        address.sin_family = AF_INET;
+        address.sin_port = htons(port);
+        if (::inet_pton(AF_INET, host.c_str(), &address.sin_addr) != 1)
+            return false;
+
+        unsigned char data[kSyncRequestSize];
+        write_le<uint32_t>(data, kSyncMagic);
+        write_le<uint32_t>(data + 4, kSyncVersion);
+        write_le<uint64_t>(data + 8, sequence);
+        write_le<int64_t>(data + 16, t1);
+        return ::sendto(_socket, data, sizeof(data), 0, reinterpret_cast<sockaddr*>(&address), sizeof(address)) == static_cast<ssize_t>(sizeof(data));
+    }
+
+    ControllerOutputs::Datagram ControllerOutputs::receive(Sample& sample, SyncReply& reply, double timeout)
+    {
+        if (_socket < 0)
+            return Datagram::NONE;
+
+        fd_set fds;
+        FD_ZERO(&fds);
+        FD_SET(_socket, &fds);
+        timeval tv;
+        tv.tv_sec = static_cast<long>(timeout);
+        tv.tv_usec = static_cast<long>((timeout - tv.tv_sec) * 1e6);
+        if (::select(_socket + 1, &fds, nullptr, nullptr, &tv) <= 0)
+            return Datagram::NONE;
+
+        unsigned char data[kSize + 1];
+        ssize_t size = ::recv(_socket, data, sizeof(data), 0);
+        if (size == static_cast<ssize_t>(kSyncReplySize) && read_le<uint32_t>(data) == kSyncMagic && read_le<uint32_t>(data + 4) == kSyncVersion) {
+            reply.sequence = read_le<uint64_t>(data + 8);
+            reply.t1 = read_le<int64_t>(data + 16);
+            reply.t2 = read_le<int64_t>(data + 24);
+            reply.t3 = read_le<int64_t>(data + 32);
+            return Datagram::SYNC_REPLY;
+        }
+        if (size != static_cast<ssize_t>(kSize) || read_le<uint32_t>(data) != kMagic || read_le<uint32_t>(data + 4) != kVersion)
+            return Datagram::NONE;
+
+        sample.sequence = read_le<uint64_t>(data + 8);
+        sample.controller_time = read_le<int64_t>(data + 16);
+        for (size_t i = 0; i < 6; i++) {
+            sample.wrench[i] = read_le<double>(data + 24 + 8 * i);
+            sample.flange[i] = read_le<double>(data + 72 + 8 * i);
+        }
+        sample.contact_count = read_le<uint64_t>(data + 120);
+        sample.contact_holding = read_le<int32_t>(data + 128) != 0;
+        return Datagram::SAMPLE;
+    }
+
+    void ControllerOutputs::close()
+    {
+        if (_socket >= 0) {
+            ::close(_socket);
+            _socket = -1;
+        }
+    }
+} // namespace iiwa_ros
@@ -0,0 +1,656 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|             bernardo.fichera@epfl.ch
+//|             walid.amanhoud@epfl.ch
+//|    website: lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+
+// Stand-in for the robot controller side of FRI, to benchmark FRI clients (e.g. iiwa_driver) without a cabinet.
+//
+// Every send period, a monitoring message is sent to the client; the command messages of the client are decoded
+// and applied to a simple robot model (the measured position follows the commanded one with a first-order lag).
+// The session goes through MONITORING_WAIT, MONITORING_READY and COMMANDING_WAIT to COMMANDING_ACTIVE (as when
+// the robot application starts the overlay motion) and drops back to MONITORING_WAIT when the client misses too
+// many deadlines (as when the overlay motion is aborted). The network is modeled by a one-way latency, a gaussian
+// jitter and a loss probability, in both directions.
+//
+// Reported: round-trip time (from sending a monitoring message to processing the command answering it),
+// deadline misses (no command within receive multiplier send periods), losses and session drops.
+//
+// The KUKA client library binds its port on all interfaces and sends to the same port of the robot, so the simulator
+// has to run on another host or network namespace (e.g. `ip netns exec robot fri_simulator --client 10.0.0.1`),
+// with the robot IP of the client pointing to it.
+
+#include <kuka/fri/ClientData.h>
+#include <kuka/fri/LBRCommand.h>
+#include <kuka/fri/LBRState.h>
+
+// FRI client SDK 2.x (CMake option FRI_CARTESIAN_POSE): the joint position mode is named JOINT_POSITION
+#ifdef IIWA_FRI_CARTESIAN_POSE
+#define IIWA_FRI_POSITION kuka::fri::JOINT_POSITION
+#else
+#define IIWA_FRI_POSITION kuka::fri::POSITION
+#endif
+
+#include <pb_decode.h>
+#include <pb_encode.h>
+
+#include <arpa/inet.h>
+#include <getopt.h>
+#include <netinet/in.h>
+#include <poll.h>
+#include <sys/socket.h>
+#include <unistd.h>
+
+#include <algorithm>
+#include <cerrno>
+#include <cmath>
+#include <csignal>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <ctime>
+#include <deque>
+#include <fstream>
+#include <iostream>
+#include <map>
+#include <random>
+#include <string>
+#include <vector>
+
+namespace {
+    // message identifiers of the LBR messages
+    class LBRMessageIds : public kuka::fri::LBRState, public kuka::fri::LBRCommand {
+    public:
+        static unsigned int monitoring() { return LBRMONITORMESSAGEID; }
+        static unsigned int command() { return LBRCOMMANDMESSAGEID; }
+    };
+
+    const int NUM_JOINTS = kuka::fri::LBRState::NUMBER_OF_JOINTS;
+
+    // nanopb callbacks for the repeated joint values
+    struct JointValues {
+        double values[NUM_JOINTS];
+        int count;
+    };
+
+    bool encode_joint_values(pb_ostream_t* stream, const pb_field_t* field, void* const* arg)
+    {
+        const JointValues* joints = static_cast<const JointValues*>(*arg);
+        for (int i = 0; i < NUM_JOINTS; i++) {
+            if (!pb_encode_tag_for_field(stream, field) || !pb_encode_fixed64(stream, &joints->values[i]))
+                return false;
+        }
+        return true;
+    }
+
+    bool decode_joint_values(pb_istream_t* stream, const pb_field_t*, void** arg)
+    {
+        JointValues* joints = static_cast<JointValues*>(*arg);
+        double value;
+        if (!pb_decode_fixed64(stream, &value))
+            return false;
+        if (joints->count < NUM_JOINTS)
+            joints->values[joints->count++] = value;
+        return true;
+    }
+
+    int64_t now_ns()
+    {
+        timespec ts;
+        clock_gettime(CLOCK_MONOTONIC, &ts);
+        return static_cast<int64_t>(ts.tv_sec) * 1000000000LL + ts.tv_nsec;
+    }
+
+    double percentile(std::vector<double>& sorted, double p)
+    {
+        if (sorted.empty())
+            return 0.;
+        size_t rank = static_cast<size_t>(std::ceil(p / 100. * sorted.size()));
+        return sorted[std::max<size_t>(1, std::min(rank, sorted.size())) - 1];
+    }
+
+    struct Options {
+        std::string client_ip = "192.170.10.1";
+        int port = 30200;
+        int client_port = 0; // 0: same as port
+        unsigned int send_period = 5; // in ms
+        unsigned int receive_multiplier = 1;
+        kuka::fri::EClientCommandMode mode = IIWA_FRI_POSITION;
+        double latency = 0.; // one-way, in ms
+        double jitter = 0.; // standard deviation, in ms
+        double loss = 0.; // probability per packet and direction
+        unsigned int max_misses = 10; // consecutive misses before the session drops
+        double tracking_time_constant = 20.; // in ms
+        double duration = 0.; // in s, 0: until interrupted
+        double report_period = 10.; // in s
+        std::string csv;
+        unsigned int seed = 42;
+    };
+
+    struct Packet {
+        int64_t release; // in ns
+        std::vector<uint8_t> data;
+    };
+
+    struct Statistics {
+        std::vector<double> rtt; // in ms
+        uint64_t monitoring_sent = 0, monitoring_lost = 0;
+        uint64_t commands_received = 0, commands_lost = 0, commands_invalid = 0;
+        uint64_t deadlines = 0, deadline_misses = 0;
+        uint64_t session_drops = 0;
+
+        void reset()
+        {
+            *this = Statistics();
+        }
+    };
+
+    volatile std::sig_atomic_t g_running = 1;
+
+    void on_signal(int)
+    {
+        g_running = 0;
+    }
+
+    class Simulator {
+    public:
+        Simulator(const Options& options) : _options(options), _rng(options.seed), _gauss(0., 1.), _uniform(0., 1.)
+        {
+            std::fill(_q, _q + NUM_JOINTS, 0.);
+            std::fill(_q_cmd, _q_cmd + NUM_JOINTS, 0.);
+            std::fill(_tau_cmd, _tau_cmd + NUM_JOINTS, 0.);
+            if (!_options.csv.empty()) {
+                _csv.open(_options.csv.c_str());
+                _csv << "time_s,sequence,rtt_ms,state" << std::endl;
+            }
+        }
+
+        ~Simulator()
+        {
+            if (_socket >= 0)
+                close(_socket);
+        }
+
+        bool open()
+        {
+            _socket = socket(AF_INET, SOCK_DGRAM, 0);
+            if (_socket < 0) {
+                std::cerr << "Cannot create socket: " << std::strerror(errno) << std::endl;
+                return false;
+            }
+
+            sockaddr_in local{};
+            local.sin_family = AF_INET;
+            local.sin_addr.s_addr = htonl(INADDR_ANY);
+            local.sin_port = htons(_options.port);
+            if (bind(_socket, reinterpret_cast<sockaddr*>(&local), sizeof(local)) != 0) {
+                std::cerr << "Cannot bind port " << _options.port << ": " << std::strerror(errno) << std::endl;
+                return false;
+            }
+
+            _client = sockaddr_in{};
+            _client.sin_family = AF_INET;
+            _client.sin_port = htons(_options.client_port > 0 ? _options.client_port : _options.port);
+            if (inet_pton(AF_INET, _options.client_ip.c_str(), &_client.sin_addr) != 1) {
+                std::cerr << "Invalid client address " << _options.client_ip << std::endl;
+                return false;
+            }
+            return true;
+        }
+
+        void run()
+        {
+            const int64_t period = static_cast<int64_t>(_options.send_period) * 1000000LL;
+            const int64_t start = now_ns();
+            int64_t next_tick = start;
+            int64_t next_report = start + static_cast<int64_t>(_options.report_period * 1e9);
+
+            std::cout << "Simulating the robot on port " << _options.port << " for " << _options.client_ip << ":" << ntohs(_client.sin_port)
+                      << " | send period " << _options.send_period << "ms | receive multiplier " << _options.receive_multiplier
+                      << " | latency " << _options.latency << "ms | jitter " << _options.jitter << "ms | loss " << _options.loss << std::endl;
+
+            while (g_running) {
+                int64_t now = now_ns();
+                if (_options.duration > 0. && now - start >= static_cast<int64_t>(_options.duration * 1e9))
+                    break;
+
+                if (now >= next_tick) {
+                    _tick(now);
+                    next_tick += period;
+                    if (next_tick < now) // overrun of the simulator itself
+                        next_tick = now + period;
+                }
+                _release(_outgoing, now, true);
+                _release(_incoming, now, false);
+
+                if (now >= next_report) {
+                    _report();
+                    next_report += static_cast<int64_t>(_options.report_period * 1e9);
+                }
+
+                // wait for the next event or a command of the client
+                int64_t next_event = next_tick;
+                if (!_outgoing.empty())
+                    next_event = std::min(next_event, _outgoing.front().release);
+                if (!_incoming.empty())
+                    next_event = std::min(next_event, _incoming.front().release);
+                int64_t wait = std::max<int64_t>(0, next_event - now_ns());
+                timespec timeout;
+                timeout.tv_sec = wait / 1000000000LL;
+                timeout.tv_nsec = wait % 1000000000LL;
+                pollfd fd{_socket, POLLIN, 0};
+                if (ppoll(&fd, 1, &timeout, nullptr) > 0 && (fd.revents & POLLIN))
+                    _receive();
+            }
+            _report();
+        }
+
+    protected:
+        // one send period of the controller
+        void _tick(int64_t now)
+        {
+            // deadline of the previous command
+            if (++_periods_since_deadline >= _options.receive_multiplier) {
+                bool missed = !_commanded_since_deadline;
+                if (_state >= kuka::fri::MONITORING_READY) {
+                    _stats.deadlines++;
+                    if (missed)
+                        _stats.deadline_misses++;
+                }
+                _misses = missed ? _misses + 1 : 0;
+                _commanded_since_deadline = false;
+                _periods_since_deadline = 0;
+            }
+            _update_state();
+
+            // robot model
+            double alpha = _options.send_period / (_options.send_period + _options.tracking_time_constant);
+            for (int i = 0; i < NUM_JOINTS; i++)
+                _q[i] += alpha * (_q_cmd[i] - _q[i]);
+
+            _send_monitoring(now);
+        }
+
+        void _update_state()
+        {
+            switch (_state) {
+            case kuka::fri::MONITORING_WAIT:
+                // the client answers regularly
+                if (_misses > 0)
+                    _state_cycles = 0;
+                else if (++_state_cycles >= 10)
+                    _set_state(kuka::fri::MONITORING_READY);
+                break;
+            case kuka::fri::MONITORING_READY:
+                // the application starts the overlay motion
+                if (++_state_cycles >= 10)
+                    _set_state(kuka::fri::COMMANDING_WAIT);
+                break;
+            case kuka::fri::COMMANDING_WAIT:
+                if (++_state_cycles >= 10)
+                    _set_state(kuka::fri::COMMANDING_ACTIVE);
+                break;
+            case kuka::fri::COMMANDING_ACTIVE:
+            default:
+                break;
+            }
+
+            if (_state >= kuka::fri::MONITORING_READY && _misses >= _options.max_misses) {
+                std::cout << "Session dropped after " << _misses << " missed deadlines" << std::endl;
+                _stats.session_drops++;
+                _set_state(kuka::fri::MONITORING_WAIT);
+            }
+        }
+
+        void _set_state(kuka::fri::ESessionState state)
+        {
+            if (state == _state)
+                return;
+            std::cout << "Session state " << _state << " -> " << state << std::endl;
+            _state = state;
+            _state_cycles = 0;
+            _misses = 0;
+            if (state == kuka::fri::COMMANDING_WAIT)
+                std::copy(_q, _q + NUM_JOINTS, _q_cmd);
+        }
+
+        kuka::fri::EConnectionQuality _quality() const
+        {
+            double miss_rate = _stats.deadlines ? static_cast<double>(_stats.deadline_misses) / _stats.deadlines : 0.;
+            if (miss_rate < 0.001)
+                return kuka::fri::EXCELLENT;
+            if (miss_rate < 0.01)
+                return kuka::fri::GOOD;
+            if (miss_rate < 0.1)
+                return kuka::fri::FAIR;
+            return kuka::fri::POOR;
+        }
+
+        void _send_monitoring(int64_t now)
+        {
+            FRIMonitoringMessage msg;
+            std::memset(&msg, 0, sizeof(msg));
+
+            JointValues q, q_cmd, tau, tau_cmd, tau_ext, q_ipo;
+            std::copy(_q, _q + NUM_JOINTS, q.values);
+            std::copy(_q_cmd, _q_cmd + NUM_JOINTS, q_cmd.values);
+            std::copy(_q_cmd, _q_cmd + NUM_JOINTS, q_ipo.values);
+            std::copy(_tau_cmd, _tau_cmd + NUM_JOINTS, tau_cmd.values);
+            std::copy(_tau_cmd, _tau_cmd + NUM_JOINTS, tau.values);
+            std::fill(tau_ext.values, tau_ext.values + NUM_JOINTS, 0.);
+
+            uint32_t sequence = _sequence++;
+            msg.header.messageIdentifier = LBRMessageIds::monitoring();
+            msg.header.sequenceCounter = sequence;
+            msg.header.reflectedSequenceCounter = _last_command_sequence;
+
+            msg.has_connectionInfo = true;
+            msg.connectionInfo.sessionState = static_cast<decltype(msg.connectionInfo.sessionState)>(_state);
+            msg.connectionInfo.quality = static_cast<decltype(msg.connectionInfo.quality)>(_quality());
+            msg.connectionInfo.has_sendPeriod = true;
+            msg.connectionInfo.sendPeriod = _options.send_period;
+            msg.connectionInfo.has_receiveMultiplier = true;
+            msg.connectionInfo.receiveMultiplier = _options.receive_multiplier;
+
+            msg.has_robotInfo = true;
+            msg.robotInfo.has_numberOfJoints = true;
+            msg.robotInfo.numberOfJoints = NUM_JOINTS;
+
+            msg.has_monitorData = true;
+            _set_joints(msg.monitorData.has_measuredJointPosition, msg.monitorData.measuredJointPosition.value, q);
+            _set_joints(msg.monitorData.has_commandedJointPosition, msg.monitorData.commandedJointPosition.value, q_cmd);
+            _set_joints(msg.monitorData.has_measuredTorque, msg.monitorData.measuredTorque.value, tau);
+            _set_joints(msg.monitorData.has_commandedTorque, msg.monitorData.commandedTorque.value, tau_cmd);
+            _set_joints(msg.monitorData.has_externalTorque, msg.monitorData.externalTorque.value, tau_ext);
+            timespec wall;
+            clock_gettime(CLOCK_REALTIME, &wall);
+            msg.monitorData.has_timestamp = true;
+            msg.monitorData.timestamp.sec = static_cast<uint32_t>(wall.tv_sec);
+            msg.monitorData.timestamp.nanosec = static_cast<uint32_t>(wall.tv_nsec);
+
+            msg.has_ipoData = true;
+            _set_joints(msg.ipoData.has_jointPosition, msg.ipoData.jointPosition.value, q_ipo);
+            msg.ipoData.has_clientCommandMode = true;
+            msg.ipoData.clientCommandMode = static_cast<decltype(msg.ipoData.clientCommandMode)>(_options.mode);
+
+            Packet packet;
+            packet.data.resize(kuka::fri::FRI_MONITOR_MSG_MAX_SIZE);
+            pb_ostream_t stream = pb_ostream_from_buffer(packet.data.data(), packet.data.size());
+            if (!pb_encode(&stream, FRIMonitoringMessage_fields, &msg)) {
+                std::cerr << "Cannot encode monitoring message: " << PB_GET_ERROR(&stream) << std::endl;
+                return;
+            }
+            packet.data.resize(stream.bytes_written);
+
+            _stats.monitoring_sent++;
+            _sent[sequence] = now;
+            if (_sent.size() > 1000)
+                _sent.erase(_sent.begin());
+
+            if (_uniform(_rng) < _options.loss) {
+                _stats.monitoring_lost++;
+                return;
+            }
+            packet.release = now + _delay();
+            _enqueue(_outgoing, packet);
+        }
+
+        static void _set_joints(bool& has, pb_callback_t& callback, JointValues& joints)
+        {
+            has = true;
+            callback.funcs.encode = &encode_joint_values;
+            callback.arg = &joints;
+        }
+
+        void _receive()
+        {
+            Packet packet;
+            packet.data.resize(kuka::fri::FRI_COMMAND_MSG_MAX_SIZE);
+            ssize_t size = recv(_socket, packet.data.data(), packet.data.size(), 0);
+            if (size <= 0)
+                return;
+            packet.data.resize(size);
+
+            if (_uniform(_rng) < _options.loss) {
+                _stats.commands_lost++;
+                return;
+            }
+            packet.release = now_ns() + _delay();
+            _enqueue(_incoming, packet);
+        }
+
+        void _process_command(const std::vector<uint8_t>& data, int64_t now)
+        {
+            FRICommandMessage msg;
+            std::memset(&msg, 0, sizeof(msg));
+            JointValues q_cmd, tau_cmd;
+            q_cmd.count = tau_cmd.count = 0;
+            msg.commandData.jointPosition.value.funcs.decode = &decode_joint_values;
+            msg.commandData.jointPosition.value.arg = &q_cmd;
+            msg.commandData.jointTorque.value.funcs.decode = &decode_joint_values;
+            msg.commandData.jointTorque.value.arg = &tau_cmd;
+
+            pb_istream_t stream = pb_istream_from_buffer(data.data(), data.size());
+            if (!pb_decode(&stream, FRICommandMessage_fields, &msg) || msg.header.messageIdentifier != LBRMessageIds::command()) {
+                _stats.commands_invalid++;
+                return;
+            }
+
+            _stats.commands_received++;
+            _commanded_since_deadline = true;
+            _last_command_sequence = msg.header.sequenceCounter;
+
+            std::map<uint32_t, int64_t>::iterator sent = _sent.find(msg.header.reflectedSequenceCounter);
+            if (sent != _sent.end()) {
+                double rtt = (now - sent->second) / 1e6;
+                _stats.rtt.push_back(rtt);
+                if (_csv.is_open())
+                    _csv << now / 1e9 << "," << msg.header.reflectedSequenceCounter << "," << rtt << "," << _state << "\n";
+            }
+
+            if (_state != kuka::fri::COMMANDING_ACTIVE)
+                return;
+            if (msg.has_commandData && msg.commandData.has_jointPosition && q_cmd.count == NUM_JOINTS)
+                std::copy(q_cmd.values, q_cmd.values + NUM_JOINTS, _q_cmd);
+            if (msg.has_commandData && msg.commandData.has_jointTorque && tau_cmd.count == NUM_JOINTS)
+                std::copy(tau_cmd.values, tau_cmd.values + NUM_JOINTS, _tau_cmd);
+        }
+
+        int64_t _delay()
+        {
+            double delay = _options.latency + _options.jitter * _gauss(_rng);
+            return static_cast<int64_t>(std::max(0., delay) * 1e6);
+        }
+
+        // keeps the queue sorted by release time (jitter may reorder packets, as on a real network)
+        static void _enqueue(std::deque<Packet>& queue, const Packet& packet)
+        {
+            std::deque<Packet>::iterator it = queue.end();
+            while (it != queue.begin() && (it - 1)->release > packet.release)
+                --it;
+            queue.insert(it, packet);
+        }
+
+        void _release(std::deque<Packet>& queue, int64_t now, bool outgoing)
+        {
+            while (!queue.empty() && queue.front().release <= now) {
+                if (outgoing)
+                    sendto(_socket, queue.front().data.data(), queue.front().data.size(), 0, reinterpret_cast<sockaddr*>(&_client), sizeof(_client));
+                else
+                    _process_command(queue.front().data, now);
+                queue.pop_front();
+            }
+        }
+
+        void _report()
+        {
+            std::vector<double>& rtt = _stats.rtt;
+            std::sort(rtt.begin(), rtt.end());
+            double mean = 0.;
+            for (size_t i = 0; i < rtt.size(); i++)
+                mean += rtt[i];
+            mean = rtt.empty() ? 0. : mean / rtt.size();
+
+            std::printf("[fri_simulator] state %d | monitoring sent %lu (lost %lu) | commands %lu (lost %lu, invalid %lu) | session drops %lu\n",
+                static_cast<int>(_state), static_cast<unsigned long>(_stats.monitoring_sent), static_cast<unsigned long>(_stats.monitoring_lost),
+                static_cast<unsigned long>(_stats.commands_received), static_cast<unsigned long>(_stats.commands_lost),
+                static_cast<unsigned long>(_stats.commands_invalid), static_cast<unsigned long>(_stats.session_drops));
+            std::printf("[fri_simulator] deadline misses %lu/%lu (%.3f%%)\n", static_cast<unsigned long>(_stats.deadline_misses),
+                static_cast<unsigned long>(_stats.deadlines), _stats.deadlines ? 100. * _stats.deadline_misses / _stats.deadlines : 0.);
+            std::printf("[fri_simulator] rtt ms: mean %.3f | p50 %.3f | p99 %.3f | p99.9 %.3f | max %.3f\n", mean,
+                percentile(rtt, 50.), percentile(rtt, 99.), percentile(rtt, 99.9), rtt.empty() ? 0. : rtt.back());
+            std::fflush(stdout);
+            if (_csv.is_open())
+                _csv.flush();
+
+            _stats.reset();
+        }
+
+        Options _options;
+        int _socket = -1;
+        sockaddr_in _client;
+
+        std::mt19937 _rng;
+        std::normal_distribution<double> _gauss;
+        std::uniform_real_distribution<double> _uniform;
+        std::deque<Packet> _outgoing, _incoming;
+
+        kuka::fri::ESessionState _state = kuka::fri::MONITORING_WAIT;
+        unsigned int _state_cycles = 0;
+        unsigned int _periods_since_deadline = 0;
+        unsigned int _misses = 0;
+        bool _commanded_since_deadline = false;
+        uint32_t _sequence = 0;
+        uint32_t _last_command_sequence = 0;
+        std::map<uint32_t, int64_t> _sent; // send time of the monitoring messages, by sequence counter
+
+        double _q[NUM_JOINTS], _q_cmd[NUM_JOINTS], _tau_cmd[NUM_JOINTS];
+
+        Statistics _stats;
+        std::ofstream _csv;
+    };
+
+    void usage(const char* name)
+    {
+        std::cout << "Usage: " << name << " [options]\n"
+                  << "  --client IP             address of the FRI client (default 192.170.10.1)\n"
+                  << "  --port PORT             FRI port (default 30200)\n"
+                  << "  --client-port PORT      port of the FRI client (default: same as --port)\n"
+                  << "  --send-period MS        send period in ms (default 5)\n"
+                  << "  --receive-multiplier N  receive multiplier (default 1)\n"
+                  << "  --mode MODE             position, torque or wrench (default position)\n"
+                  << "  --latency MS            one-way network latency in ms (default 0)\n"
+                  << "  --jitter MS             standard deviation of the network jitter in ms (default 0)\n"
+                  << "  --loss P                packet loss probability per direction (default 0)\n"
+                  << "  --max-misses N          consecutive deadline misses before the session drops (default 10)\n"
+                  << "  --duration S            duration of the run in s (default: until interrupted)\n"
+                  << "  --report S              report period in s (default 10)\n"
+                  << "  --csv FILE              write every round-trip time to FILE\n"
+                  << "  --seed N                seed of the network model (default 42)" << std::endl;
+    }
+} // namespace
+
+int main(int argc, char** argv)
+{
+    Options options;
+    static option long_options[] = {
+        {"client", required_argument, nullptr, 'c'},
+        {"port", required_argument, nullptr, 'p'},
+        {"client-port", required_argument, nullptr, 'P'},
+        {"send-period", required_argument, nullptr, 's'},
+        {"receive-multiplier", required_argument, nullptr, 'r'},
+        {"mode", required_argument, nullptr, 'm'},
+        {"latency", required_argument, nullptr, 'l'},
+        {"jitter", required_argument, nullptr, 'j'},
+        {"loss", required_argument, nullptr, 'o'},
+        {"max-misses", required_argument, nullptr, 'x'},
+        {"duration", required_argument, nullptr, 'd'},
+        {"report", required_argument, nullptr, 'R'},
+        {"csv", required_argument, nullptr, 'f'},
+        {"seed", required_argument, nullptr, 'S'},
+        {"help", no_argument, nullptr, 'h'},
+        {nullptr, 0, nullptr, 0}};
+
+    int opt;
+    while ((opt = getopt_long(argc, argv, "h", long_options, nullptr)) != -1) {
+        switch (opt) {
+        case 'c':
+            options.client_ip = optarg;
+            break;
+        case 'p':
+            options.port = std::atoi(optarg);
+            break;
+        case 'P':
+            options.client_port = std::atoi(optarg);
+            break;
+        case 's':
+            options.send_period = std::max(1, std::atoi(optarg));
+            break;
+        case 'r':
+            options.receive_multiplier = std::max(1, std::atoi(optarg));
+            break;
+        case 'm':
+            if (std::string(optarg) == "torque")
+                options.mode = kuka::fri::TORQUE;
+            else if (std::string(optarg) == "wrench")
+                options.mode = kuka::fri::WRENCH;
+            else
+                options.mode = IIWA_FRI_POSITION;
+            break;
+        case 'l':
+            options.latency = std::atof(optarg);
+            break;
+        case 'j':
+            options.jitter = std::atof(optarg);
+            break;
+        case 'o':
+            options.loss = std::atof(optarg);
+            break;
+        case 'x':
+            options.max_misses = std::max(1, std::atoi(optarg));
+            break;
+        case 'd':
+            options.duration = std::atof(optarg);
+            break;
+        case 'R':
+            options.report_period = std::max(0.1, std::atof(optarg));
+            break;
+        case 'f':
+            options.csv = optarg;
+            break;
+        case 'S':
+            options.seed = static_cast<unsigned int>(std::atoi(optarg));
+            break;
+        default:
+            usage(argv[0]);
+            return opt == 'h' ? 0 : 1;
+        }
+    }
+
+    std::signal(SIGINT, on_signal);
+    std::signal(SIGTERM, on_signal);
+
+    Simulator simulator(options);
+    if (!simulator.open())
+        return 1;
+    simulator.run();
+
+    return 0;
+}
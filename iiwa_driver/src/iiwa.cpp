@@ -31,6 +31,10 @@
 // FRI Headers
 #include <kuka/fri/ClientData.h>
 
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <sstream>
 #include <thread>
 
 namespace iiwa_ros {
@@ -68,6 +72,11 @@ namespace iiwa_ros {
 
     Iiwa::~Iiwa()
     {
+        _fri_running = false;
+        _outputs_running = false;
+        if (_outputs_thread.joinable())
+            _outputs_thread.join();
+
         // Disconnect from robot
         _disconnect_fri();
 
@@ -107,6 +116,17 @@ namespace iiwa_ros {
             return;
         }
 
+        if (_command_freq > 0.) {
+            // the FRI cycles are answered from interpolated setpoints, the controllers run at command_freq
+            _fri_running = true;
+            std::thread fri(&Iiwa::_fri_loop, this);
+            std::thread t1(&Iiwa::_command_loop, this);
+            t1.join();
+            _fri_running = false;
+            fri.join();
+            return;
+        }
+
         std::thread t1(&Iiwa::_ctrl_loop, this);
         t1.join();
     }
@@ -129,6 +149,15 @@ namespace iiwa_ros {
         _joint_velocity_command.resize(_num_joints);
         _joint_effort_command.resize(_num_joints);
 
+        // Setpoints between the controllers and the FRI cycles, if they run at different rates
+        _fri_sample.position.assign(_num_joints, 0.);
+        _fri_sample.velocity.assign(_num_joints, 0.);
+        _fri_sample.effort.assign(_num_joints, 0.);
+        _fri_target.position.assign(_num_joints, 0.);
+        _fri_target.effort.assign(_num_joints, 0.);
+        if (_command_freq > 0.)
+            _interpolator.configure(_num_joints, _interpolation_limits, 1. / _command_freq, _max_extrapolation);
+
         // Get the URDF XML from the parameter server
         urdf::Model urdf_model;
         std::string urdf_string;
@@ -240,19 +269,62 @@ namespace iiwa_ros {
         _additional_pub.msg_.commanded_positions.layout.dim[0].size = _num_joints;
         _additional_pub.msg_.commanded_positions.layout.dim[0].stride = 0;
         _additional_pub.msg_.commanded_positions.data.resize(_num_joints);
+
+        _wrench_sub = _nh.subscribe("wrench_command", 1, &Iiwa::_wrench_callback, this, ros::TransportHints().tcpNoDelay());
+#ifdef IIWA_FRI_CARTESIAN_POSE
+        _pose_sub = _nh.subscribe("cartesian_pose_command", 1, &Iiwa::_pose_callback, this, ros::TransportHints().tcpNoDelay());
+#endif
+
+        if (_gripper_enabled) {
+            _gripper_pub.init(_nh, "gripper_state", 20);
+            _gripper_sub = _nh.subscribe("gripper_command", 1, &Iiwa::_gripper_callback, this, ros::TransportHints().tcpNoDelay());
+        }
+
+        _command_channel.set_server(_remote_host, _command_port, _command_timeout);
+        if (_command_channel.enabled()) {
+            _command_reply_pub = _nh.advertise<std_msgs::String>("fri_command_reply", 10);
+            _command_sub = _nh.subscribe("fri_command", 10, &Iiwa::_command_callback, this);
+            _trajectory_sub = _nh.subscribe("trajectory_command", 1, &Iiwa::_trajectory_callback, this);
+        }
+
+        _outputs_running = false;
+        _contact_count = 0;
+        _contact_holding = false;
+        _contact_count_seen = 0;
+        if (_outputs_port > 0) {
+            std::string error;
+            if (_controller_outputs.open(_outputs_port, error)) {
+                _outputs_running = true;
+                _outputs_thread = std::thread(&Iiwa::_receive_outputs, this);
+            }
+            else
+                ROS_ERROR_STREAM_NAMED("Iiwa", "Cannot receive the additional outputs on port " << _outputs_port << ": " << error);
+        }
     }
 
     void Iiwa::_ctrl_loop()
     {
-        static ros::Rate rate(_control_freq);
+        double rate_freq = _control_freq;
+        ros::Rate rate(rate_freq);
         while (ros::ok()) {
             ros::Time time = ros::Time::now();
 
+            // the FRI rate profile of the robot application may change the control frequency
+            if (rate_freq != _control_freq) {
+                rate_freq = _control_freq;
+                rate = ros::Rate(rate_freq);
+            }
+
             // TO-DO: Get real elapsed time?
             auto elapsed_time = ros::Duration(1. / _control_freq);
 
-            _read(elapsed_time);
-            _controller_manager->update(ros::Time::now(), elapsed_time);
+            bool hold = _read(elapsed_time);
+            _controller_manager->update(ros::Time::now(), elapsed_time, _contact_reset());
+            // the controllers run, but their commands are not sent while the measured position is held
+            if (hold) {
+                _joint_position_command = _joint_position;
+                std::fill(_joint_effort_command.begin(), _joint_effort_command.end(), 0.);
+            }
             _write(elapsed_time);
 
             _publish();
@@ -260,6 +332,112 @@ namespace iiwa_ros {
         }
     }
 
+    void Iiwa::_fri_loop()
+    {
+        // Answers every FRI cycle, whether the controllers updated in time or not: the position
+        // setpoints are interpolated between their targets, the torques held
+        std::vector<double> position(_num_joints, 0.), velocity(_num_joints, 0.), effort(_num_joints, 0.);
+        std::vector<double> effort_command(_num_joints, 0.);
+        ros::Time target_stamp, hold_stamp;
+        bool hold = true;
+        while (ros::ok() && _fri_running) {
+            double dt = 1. / _control_freq;
+            if (!_read_session()) {
+                // the targets from before are dropped when the session resumes
+                hold = true;
+                std::this_thread::sleep_for(std::chrono::duration<double>(dt));
+                continue;
+            }
+
+            _measure(dt, position, velocity, effort);
+            if (_gripper_enabled && !_gripper_io_checked)
+                _check_gripper_io();
+
+            ros::Time now = ros::Time::now();
+            if (_hold_commands() || hold) {
+                _interpolator.reset(position, now.toSec());
+                std::fill(effort_command.begin(), effort_command.end(), 0.);
+                hold_stamp = now;
+                hold = false;
+            }
+
+            // exchange with the controllers, without waiting for them
+            std::unique_lock<std::mutex> lock(_exchange_mutex, std::try_to_lock);
+            if (lock.owns_lock()) {
+                _fri_sample.position = position;
+                _fri_sample.velocity = velocity;
+                _fri_sample.effort = effort;
+                _fri_sample.command_mode = _command_mode;
+                _fri_sample.stamp = now;
+                if (_fri_target.stamp > target_stamp && _fri_target.sample_stamp >= hold_stamp && _fri_target.command_mode == _command_mode) {
+                    target_stamp = _fri_target.stamp;
+                    _interpolator.set_target(_fri_target.position, now.toSec());
+                    effort_command = _fri_target.effort;
+                }
+                lock.unlock();
+            }
+
+            _interpolator.update(now.toSec(), dt);
+            _command_age = target_stamp.isZero() ? -1. : (now - target_stamp).toSec();
+            if (_interpolator.extrapolating()) {
+                _extrapolated_cycles++;
+                ROS_WARN_STREAM_THROTTLE_NAMED(1., "Iiwa", "No controller update for " << _command_age << "s, extrapolating the setpoints (" << _extrapolated_cycles << " cycles so far).");
+            }
+
+            _write_command(_interpolator.setpoint(), effort_command);
+            _publish();
+        }
+    }
+
+    void Iiwa::_command_loop()
+    {
+        // below the FRI cycles, which must not wait for the controllers
+        int policy;
+        sched_param param{};
+        if (pthread_getschedparam(pthread_self(), &policy, &param) == 0 && policy == SCHED_FIFO && param.sched_priority > 1) {
+            param.sched_priority--;
+            pthread_setschedparam(pthread_self(), SCHED_FIFO, &param);
+        }
+
+        ros::Rate rate(_command_freq);
+        kuka::fri::EClientCommandMode command_mode = kuka::fri::NO_COMMAND_MODE;
+        ros::Time sample_stamp, last = ros::Time::now() - ros::Duration(1. / _command_freq);
+        while (ros::ok()) {
+            // the latest FRI cycle
+            {
+                std::lock_guard<std::mutex> lock(_exchange_mutex);
+                if (_fri_sample.stamp > sample_stamp) {
+                    sample_stamp = _fri_sample.stamp;
+                    _joint_position = _fri_sample.position;
+                    _joint_velocity = _fri_sample.velocity;
+                    _joint_effort = _fri_sample.effort;
+                    if (_fri_sample.command_mode != command_mode) {
+                        _joint_position_command = _joint_position;
+                        std::fill(_joint_effort_command.begin(), _joint_effort_command.end(), 0.);
+                        command_mode = _fri_sample.command_mode;
+                    }
+                }
+            }
+
+            ros::Time time = ros::Time::now();
+            ros::Duration elapsed_time = time - last;
+            last = time;
+
+            if (!sample_stamp.isZero()) {
+                _controller_manager->update(time, elapsed_time, _contact_reset());
+                _enforce_limits(elapsed_time);
+
+                std::lock_guard<std::mutex> lock(_exchange_mutex);
+                _fri_target.position = _joint_position_command;
+                _fri_target.effort = _joint_effort_command;
+                _fri_target.command_mode = command_mode;
+                _fri_target.sample_stamp = sample_stamp;
+                _fri_target.stamp = ros::Time::now();
+            }
+            rate.sleep();
+        }
+    }
+
     void Iiwa::_publish()
     {
 		// publish commanding status
@@ -276,8 +454,51 @@ namespace iiwa_ros {
                 _additional_pub.msg_.commanded_torques.data[i] = _robot_state.getCommandedTorque()[i];
                 _additional_pub.msg_.commanded_positions.data[i] = _robot_state.getCommandedJointPosition()[i];
             }
+            _additional_pub.msg_.command_age = _command_age;
+            _additional_pub.msg_.extrapolated_cycles = _extrapolated_cycles;
+            _additional_pub.msg_.contact_count = _contact_count;
+            _additional_pub.msg_.contact_holding = _contact_holding;
+
+            // computed on the controller: wrench at the motion frame, flange pose (A, B, C: rotations about z, y, x)
+            const CartesianOutputs& outputs = *_cartesian_outputs.readFromRT();
+            const std::array<double, 6>& w = outputs.sample.wrench;
+            const std::array<double, 6>& f = outputs.sample.flange;
+            _additional_pub.msg_.outputs_age = outputs.stamp.isZero() ? -1. : (_additional_pub.msg_.header.stamp - outputs.stamp).toSec();
+            const ClockSync::Estimate& clock = *_clock_estimate.readFromRT();
+            if (clock.valid && !outputs.stamp.isZero())
+                _additional_pub.msg_.outputs_stamp.fromNSec(clock.to_local(outputs.sample.controller_time));
+            else
+                _additional_pub.msg_.outputs_stamp = ros::Time();
+            _additional_pub.msg_.clock_offset = clock.offset * 1e-9;
+            _additional_pub.msg_.clock_drift = clock.drift;
+            _additional_pub.msg_.clock_round_trip = clock.round_trip * 1e-9;
+            _additional_pub.msg_.external_wrench.force.x = w[0];
+            _additional_pub.msg_.external_wrench.force.y = w[1];
+            _additional_pub.msg_.external_wrench.force.z = w[2];
+            _additional_pub.msg_.external_wrench.torque.x = w[3];
+            _additional_pub.msg_.external_wrench.torque.y = w[4];
+            _additional_pub.msg_.external_wrench.torque.z = w[5];
+            _additional_pub.msg_.flange_pose.position.x = f[0];
+            _additional_pub.msg_.flange_pose.position.y = f[1];
+            _additional_pub.msg_.flange_pose.position.z = f[2];
+            double cy = std::cos(f[3] / 2.), sy = std::sin(f[3] / 2.);
+            double cp = std::cos(f[4] / 2.), sp = std::sin(f[4] / 2.);
+            double cr = std::cos(f[5] / 2.), sr = std::sin(f[5] / 2.);
+            _additional_pub.msg_.flange_pose.orientation.w = cr * cp * cy + sr * sp * sy;
+            _additional_pub.msg_.flange_pose.orientation.x = sr * cp * cy - cr * sp * sy;
+            _additional_pub.msg_.flange_pose.orientation.y = cr * sp * cy + sr * cp * sy;
+            _additional_pub.msg_.flange_pose.orientation.z = cr * cp * sy - sr * sp * cy;
             _additional_pub.unlockAndPublish();
 		}
+
+        // publish gripper state
+        if (_gripper_enabled && _gripper_io_checked && !_idle && _gripper_pub.trylock()) {
+            _gripper_pub.msg_.header.stamp = ros::Time::now();
+            _gripper_pub.msg_.close = !_gripper_close_io.empty() && _robot_state.getBooleanIOValue(_gripper_close_io.c_str());
+            _gripper_pub.msg_.closed = !_gripper_closed_io.empty() && _robot_state.getBooleanIOValue(_gripper_closed_io.c_str());
+            _gripper_pub.msg_.position = _gripper_actual_position_io.empty() ? -1. : _robot_state.getDigitalIOValue(_gripper_actual_position_io.c_str()) / _gripper_position_max;
+            _gripper_pub.unlockAndPublish();
+        }
     }
 
     void Iiwa::_load_params()
@@ -287,15 +508,49 @@ namespace iiwa_ros {
         n_p.param("fri/port", _port, 30200); // Default port is 30200
         n_p.param<std::string>("fri/robot_ip", _remote_host, "192.170.10.2"); // Default robot ip is 192.170.10.2
         n_p.param<std::string>("fri/robot_description", _robot_description, "/robot_description");
+        n_p.param("fri/command_port", _command_port, 30001); // 0 disables the command channel
+        n_p.param("fri/command_timeout", _command_timeout, 5.);
+        n_p.param("fri/outputs_port", _outputs_port, 30005); // 0 disables the additional outputs of the controller
+        n_p.param("fri/clock_sync_period", _clock_sync_period, 0.1); // 0 disables the clock synchronization
 
         n_p.param("hardware_interface/control_freq", _control_freq, 200.);
+        n_p.param("hardware_interface/wrench_timeout", _wrench_timeout, 0.1); // in s, the commanded wrench is zeroed afterwards
+        n_p.param("hardware_interface/command_freq", _command_freq, 0.); // 0: the controllers run on every FRI cycle
+        n_p.param("hardware_interface/interpolation/max_velocity", _interpolation_limits.velocity, 1.5);
+        n_p.param("hardware_interface/interpolation/max_acceleration", _interpolation_limits.acceleration, 10.);
+        n_p.param("hardware_interface/interpolation/max_jerk", _interpolation_limits.jerk, 500.);
+        n_p.param("hardware_interface/interpolation/max_extrapolation", _max_extrapolation, 0.05); // in s, held afterwards
+
+        n_p.param<std::string>("gripper/close_io", _gripper_close_io, "");
+        n_p.param<std::string>("gripper/position_io", _gripper_position_io, "");
+        n_p.param<std::string>("gripper/closed_io", _gripper_closed_io, "");
+        n_p.param<std::string>("gripper/actual_position_io", _gripper_actual_position_io, "");
+        n_p.param("gripper/position_max", _gripper_position_max, 255.); // raw value of a fully open gripper
+        _gripper_enabled = !(_gripper_close_io.empty() && _gripper_position_io.empty() && _gripper_closed_io.empty() && _gripper_actual_position_io.empty());
+        _gripper_io_checked = false;
+        _control_period = ros::Duration(1. / _control_freq);
         n_p.getParam("hardware_interface/joints", _joint_names);
     }
 
-    void Iiwa::_read(ros::Duration elapsed_time)
+    bool Iiwa::_read(ros::Duration elapsed_time)
     {
         // Read data from robot (via FRI)
-        kuka::fri::ESessionState fri_state;
+        if (!_read_session()) // if idle, do nothing
+            return false;
+
+        // Update ROS structures
+        _measure(elapsed_time.toSec(), _joint_position, _joint_velocity, _joint_effort);
+
+        if (_gripper_enabled && !_gripper_io_checked)
+            _check_gripper_io();
+
+        // whether the measured position is to be held instead of the commands of this cycle
+        return _hold_commands();
+    }
+
+    bool Iiwa::_read_session()
+    {
+        kuka::fri::ESessionState fri_state = kuka::fri::IDLE;
         _read_fri(fri_state);
 
         switch (fri_state) {
@@ -309,54 +564,179 @@ namespace iiwa_ros {
             _idle = false;
             _commanding = true;
             break;
-        case kuka::fri::IDLE: // if idle, do nothing
+        case kuka::fri::IDLE:
         default:
             _idle = true;
             _commanding = false;
-            return;
         }
+        return !_idle;
+    }
 
-        // Update ROS structures
-        _joint_position_prev = _joint_position;
-
+    void Iiwa::_measure(double elapsed, std::vector<double>& position, std::vector<double>& velocity, std::vector<double>& effort)
+    {
         for (int i = 0; i < _num_joints; i++) {
-            _joint_position[i] = _robot_state.getMeasuredJointPosition()[i];
-            _joint_velocity[i] = filters::exponentialSmoothing((_joint_position[i] - _joint_position_prev[i]) / elapsed_time.toSec(), _joint_velocity[i], 0.2);
-            _joint_effort[i] = _robot_state.getMeasuredTorque()[i];
+            double previous = position[i];
+            position[i] = _robot_state.getMeasuredJointPosition()[i];
+            velocity[i] = filters::exponentialSmoothing((position[i] - previous) / elapsed, velocity[i], 0.2);
+            effort[i] = _robot_state.getMeasuredTorque()[i];
         }
     }
 
+    bool Iiwa::_update_command_mode()
+    {
+        // The robot application can switch the command mode of its overlay on the same session:
+        // hold the measured position and drop the torques of the previous mode until the
+        // controllers of the new mode take over
+        kuka::fri::EClientCommandMode command_mode = _robot_state.getClientCommandMode();
+        if (command_mode == kuka::fri::NO_COMMAND_MODE || command_mode == _command_mode)
+            return false;
+        if (_command_mode != kuka::fri::NO_COMMAND_MODE)
+            ROS_INFO_STREAM_NAMED("Iiwa", "Client command mode switched from " << _command_mode_name(_command_mode) << " to " << _command_mode_name(command_mode));
+        _command_mode = command_mode;
+        _command_mode_since = ros::Time::now();
+        return true;
+    }
+
+    bool Iiwa::_hold_commands()
+    {
+        // The measured position is held and the commands received before are dropped when the
+        // command mode switches, and as long as the robot application holds after a contact
+        bool hold = _update_command_mode();
+        if (_contact_holding) {
+            _command_mode_since = ros::Time::now();
+            hold = true;
+        }
+        return hold;
+    }
+
+    bool Iiwa::_contact_reset()
+    {
+        // The controllers restart from the measured state while the robot holds after a contact
+        // (and once more for a contact too short to be seen holding), so that the resumed overlay
+        // does not carry on with their targets from before the contact
+        uint64_t count = _contact_count;
+        bool reset = _contact_holding || count != _contact_count_seen;
+        _contact_count_seen = count;
+        return reset;
+    }
+
     void Iiwa::_write(ros::Duration elapsed_time)
     {
         if (_idle) // if idle, do nothing
             return;
 
-        // enforce limits
+        _enforce_limits(elapsed_time);
+        _write_command(_joint_position_command, _joint_effort_command);
+    }
+
+    void Iiwa::_enforce_limits(ros::Duration elapsed_time)
+    {
         _position_joint_limits_interface.enforceLimits(elapsed_time);
         _position_joint_saturation_interface.enforceLimits(elapsed_time);
         _effort_joint_limits_interface.enforceLimits(elapsed_time);
         _effort_joint_saturation_interface.enforceLimits(elapsed_time);
         _velocity_joint_limits_interface.enforceLimits(elapsed_time);
         _velocity_joint_saturation_interface.enforceLimits(elapsed_time);
+    }
 
+    void Iiwa::_write_command(const std::vector<double>& position_command, const std::vector<double>& effort_command)
+    {
         // reset commmand message
         _fri_message_data->resetCommandMessage();
 
         if (_robot_state.getClientCommandMode() == kuka::fri::TORQUE) {
-            _robot_command.setTorque(_joint_effort_command.data());
-            _robot_command.setJointPosition(_joint_position.data());
+            _robot_command.setTorque(effort_command.data());
+            _robot_command.setJointPosition(_robot_state.getMeasuredJointPosition());
         }
-        else if (_robot_state.getClientCommandMode() == kuka::fri::POSITION)
-            _robot_command.setJointPosition(_joint_position_command.data());
+        else if (_robot_state.getClientCommandMode() == IIWA_FRI_POSITION)
+            _robot_command.setJointPosition(position_command.data());
+        else if (_robot_state.getClientCommandMode() == kuka::fri::WRENCH) {
+            WrenchCommand wrench = *_wrench_command.readFromRT();
+            if (wrench.stamp <= _command_mode_since)
+                wrench.wrench.fill(0.);
+            else if ((ros::Time::now() - wrench.stamp).toSec() > _wrench_timeout) {
+                if (!wrench.stamp.isZero())
+                    ROS_WARN_STREAM_THROTTLE_NAMED(1., "Iiwa", "No wrench command received for more than " << _wrench_timeout << "s, commanding zero wrench.");
+                wrench.wrench.fill(0.);
+            }
+            _robot_command.setWrench(wrench.wrench.data());
+            _robot_command.setJointPosition(_robot_state.getMeasuredJointPosition());
+        }
+#ifdef IIWA_FRI_CARTESIAN_POSE
+        else if (_robot_state.getClientCommandMode() == kuka::fri::CARTESIAN_POSE) {
+            // the controller solves the inverse kinematics and keeps the redundancy;
+            // the measured pose is held until a pose is received in this mode
+            PoseCommand pose = *_pose_command.readFromRT();
+            if (pose.stamp > _command_mode_since)
+                _robot_command.setCartesianPose(pose.pose.data());
+            else
+                _robot_command.setCartesianPose(_robot_state.getMeasuredCartesianPose());
+        }
+#endif
         // else ERROR
 
+        // the gripper outputs can only be written while commanding
+        if (_commanding && _gripper_enabled) {
+            GripperCommand gripper = *_gripper_command.readFromRT();
+            if (gripper.received) {
+                if (!_gripper_close_io.empty())
+                    _robot_command.setBooleanIOValue(_gripper_close_io.c_str(), gripper.close);
+                if (!_gripper_position_io.empty() && gripper.position >= 0.)
+                    _robot_command.setDigitalIOValue(_gripper_position_io.c_str(), static_cast<unsigned long long>(std::round(std::min(gripper.position, 1.) * _gripper_position_max)));
+            }
+        }
+
         _write_fri();
     }
 
+    const char* Iiwa::_command_mode_name(kuka::fri::EClientCommandMode mode)
+    {
+        switch (mode) {
+        case IIWA_FRI_POSITION:
+            return "POSITION";
+        case kuka::fri::WRENCH:
+            return "WRENCH";
+        case kuka::fri::TORQUE:
+            return "TORQUE";
+#ifdef IIWA_FRI_CARTESIAN_POSE
+        case kuka::fri::CARTESIAN_POSE:
+            return "CARTESIAN_POSE";
+#endif
+        default:
+            return "NO_COMMAND_MODE";
+        }
+    }
+
+    const char* Iiwa::_session_state_name(kuka::fri::ESessionState state)
+    {
+        switch (state) {
+        case kuka::fri::MONITORING_WAIT:
+            return "MONITORING_WAIT";
+        case kuka::fri::MONITORING_READY:
+            return "MONITORING_READY";
+        case kuka::fri::COMMANDING_WAIT:
+            return "COMMANDING_WAIT";
+        case kuka::fri::COMMANDING_ACTIVE:
+            return "COMMANDING_ACTIVE";
+        default:
+            return "IDLE";
+        }
+    }
+
+    void Iiwa::_on_fri_state_change(kuka::fri::ESessionState old_state, kuka::fri::ESessionState current_state)
+    {
+        // same names as the SESSION_STATE events of the robot application's event log
+        ROS_INFO_STREAM_NAMED("Iiwa", "FRI session state " << _session_state_name(old_state) << " -> " << _session_state_name(current_state));
+    }
+
     bool Iiwa::_init_fri()
     {
         _idle = true;
         _commanding = false;
+        _fri_send_period = 0;
+        _command_mode = kuka::fri::NO_COMMAND_MODE;
+        _command_age = -1.;
+        _extrapolated_cycles = 0;
 
         // Create message/client data
         _fri_message_data = new kuka::fri::ClientData(_robot_state.NUMBER_OF_JOINTS);
@@ -431,9 +811,173 @@ namespace iiwa_ros {
             _fri_message_data->lastState = current_state;
         }
 
+        unsigned int send_period = _fri_message_data->monitoringMsg.connectionInfo.sendPeriod;
+        if (send_period > 0 && send_period != _fri_send_period)
+            _on_fri_send_period_change(send_period);
+
         return true;
     }
 
+    void Iiwa::_on_fri_send_period_change(unsigned int send_period)
+    {
+        _fri_send_period = send_period;
+
+        // one control cycle per monitoring message
+        double fri_freq = 1000. / send_period;
+        if (std::abs(fri_freq - _control_freq) > 1e-6) {
+            ROS_WARN_STREAM_NAMED("Iiwa", "The robot sends every " << send_period << "ms (" << fri_freq << "Hz), but control_freq is " << _control_freq << "Hz. Using " << fri_freq << "Hz; check the FRIRateProfile of the robot application and hardware_interface/control_freq.");
+            _control_freq = fri_freq;
+            _control_period = ros::Duration(1. / _control_freq);
+        }
+        else
+            ROS_INFO_STREAM_NAMED("Iiwa", "FRI send period of " << send_period << "ms matches control_freq.");
+    }
+
+    bool Iiwa::_send_command(const std::string& command, std::string& reply)
+    {
+        std::lock_guard<std::mutex> lock(_command_mutex);
+        if (!_command_channel.send(command, reply)) {
+            ROS_ERROR_STREAM_NAMED("Iiwa", "Command '" << command << "' not sent: " << reply);
+            return false;
+        }
+        if (reply.compare(0, 2, "ok") != 0) {
+            ROS_WARN_STREAM_NAMED("Iiwa", "Command '" << command << "' failed: " << reply);
+            return false;
+        }
+        return true;
+    }
+
+    void Iiwa::_command_callback(const std_msgs::String::ConstPtr& msg)
+    {
+        std_msgs::String reply;
+        if (!_send_command(msg->data, reply.data) && reply.data.compare(0, 5, "error") != 0)
+            reply.data = "error " + reply.data;
+        _command_reply_pub.publish(reply);
+    }
+
+    void Iiwa::_trajectory_callback(const trajectory_msgs::JointTrajectory::ConstPtr& msg)
+    {
+        std_msgs::String reply;
+
+        // the points are uploaded in the joint order of the driver
+        std::vector<size_t> index(_num_joints);
+        for (int i = 0; i < _num_joints; i++) {
+            auto it = std::find(msg->joint_names.begin(), msg->joint_names.end(), _joint_names[i]);
+            if (it == msg->joint_names.end()) {
+                reply.data = "error joint " + _joint_names[i] + " missing in the trajectory";
+                ROS_WARN_STREAM_NAMED("Iiwa", "Trajectory rejected: " << reply.data.substr(6));
+                _command_reply_pub.publish(reply);
+                return;
+            }
+            index[i] = it - msg->joint_names.begin();
+        }
+
+        std::ostringstream command;
+        command.precision(9);
+        command << "trajectory joint";
+        for (const auto& point : msg->points) {
+            if (point.positions.size() != msg->joint_names.size()) {
+                reply.data = "error trajectory point without all positions";
+                ROS_WARN_STREAM_NAMED("Iiwa", "Trajectory rejected: " << reply.data.substr(6));
+                _command_reply_pub.publish(reply);
+                return;
+            }
+            command << " " << point.time_from_start.toSec();
+            for (int i = 0; i < _num_joints; i++)
+                command << " " << point.positions[index[i]];
+        }
+
+        if (!_send_command(command.str(), reply.data) && reply.data.compare(0, 5, "error") != 0)
+            reply.data = "error " + reply.data;
+        else
+            ROS_INFO_STREAM_NAMED("Iiwa", "Trajectory of " << msg->points.size() << " points uploaded: " << reply.data);
+        _command_reply_pub.publish(reply);
+    }
+
+    void Iiwa::_wrench_callback(const geometry_msgs::Wrench::ConstPtr& msg)
+    {
+        WrenchCommand command;
+        command.wrench = {{msg->force.x, msg->force.y, msg->force.z, msg->torque.x, msg->torque.y, msg->torque.z}};
+        command.stamp = ros::Time::now();
+        _wrench_command.writeFromNonRT(command);
+    }
+
+    void Iiwa::_pose_callback(const geometry_msgs::Pose::ConstPtr& msg)
+    {
+        PoseCommand command;
+        command.pose = {{msg->position.x * 1000., msg->position.y * 1000., msg->position.z * 1000.,
+            msg->orientation.w, msg->orientation.x, msg->orientation.y, msg->orientation.z}};
+        command.stamp = ros::Time::now();
+        _pose_command.writeFromNonRT(command);
+    }
+
+    void Iiwa::_gripper_callback(const iiwa_driver::GripperCommand::ConstPtr& msg)
+    {
+        GripperCommand command;
+        command.close = msg->close;
+        command.position = msg->position;
+        command.received = true;
+        _gripper_command.writeFromNonRT(command);
+    }
+
+    void Iiwa::_receive_outputs()
+    {
+        CartesianOutputs outputs;
+        ControllerOutputs::SyncReply reply;
+        uint64_t sync_sequence = 0;
+        ros::Time next_sync = ros::Time::now();
+        bool synchronized = false;
+        double timeout = _clock_sync_period > 0. ? std::min(0.1, _clock_sync_period) : 0.1;
+        while (_outputs_running && ros::ok()) {
+            // PTP-style exchange with the robot application, on the socket of the outputs
+            ros::Time now = ros::Time::now();
+            if (_clock_sync_period > 0. && now >= next_sync) {
+                next_sync = now + ros::Duration(_clock_sync_period);
+                _controller_outputs.send_sync_request(_remote_host, _outputs_port, sync_sequence++, static_cast<int64_t>(ros::Time::now().toNSec()));
+            }
+
+            ControllerOutputs::Datagram datagram = _controller_outputs.receive(outputs.sample, reply, timeout);
+            ros::Time stamp = ros::Time::now();
+            if (datagram == ControllerOutputs::Datagram::SAMPLE) {
+                outputs.stamp = stamp;
+                _cartesian_outputs.writeFromNonRT(outputs);
+                if (outputs.sample.contact_holding && !_contact_holding)
+                    ROS_WARN_STREAM_NAMED("Iiwa", "The robot application reacted to a contact (" << outputs.sample.contact_count << " so far): no commands are sent until the overlay is resumed.");
+                _contact_count = outputs.sample.contact_count;
+                _contact_holding = outputs.sample.contact_holding;
+            }
+            else if (datagram == ControllerOutputs::Datagram::SYNC_REPLY && _clock_sync.add(reply.t1, reply.t2, reply.t3, static_cast<int64_t>(stamp.toNSec()))) {
+                const ClockSync::Estimate& clock = _clock_sync.estimate();
+                _clock_estimate.writeFromNonRT(clock);
+                if (!synchronized)
+                    ROS_INFO_STREAM_NAMED("Iiwa", "Clock of the robot application synchronized: offset " << clock.offset * 1e-6 << "ms, round trip " << clock.round_trip * 1e-6 << "ms");
+                synchronized = true;
+            }
+        }
+    }
+
+    void Iiwa::_check_gripper_io()
+    {
+        // the FRI library throws on I/O names that are not registered in the robot application
+        _gripper_io_checked = true;
+        try {
+            if (!_gripper_close_io.empty())
+                _robot_state.getBooleanIOValue(_gripper_close_io.c_str());
+            if (!_gripper_closed_io.empty())
+                _robot_state.getBooleanIOValue(_gripper_closed_io.c_str());
+            if (!_gripper_position_io.empty())
+                _robot_state.getDigitalIOValue(_gripper_position_io.c_str());
+            if (!_gripper_actual_position_io.empty())
+                _robot_state.getDigitalIOValue(_gripper_actual_position_io.c_str());
+        }
+        catch (...) {
+            ROS_ERROR_STREAM_NAMED("Iiwa", "Gripper I/O not found in the FRI messages, check the gripper/ names against the FRIGripperIO of the robot application. Gripper disabled.");
+            _gripper_enabled = false;
+            return;
+        }
+        ROS_INFO_STREAM_NAMED("Iiwa", "Gripper I/O mapped into the FRI session");
+    }
+
     bool Iiwa::_write_fri()
     {
         // **************************************************************************
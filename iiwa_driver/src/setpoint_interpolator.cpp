@@ -0,0 +1,143 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#include <iiwa_driver/setpoint_interpolator.h>
+
+#include <algorithm>
+#include <cmath>
+
+namespace iiwa_ros {
+    void SetpointInterpolator::configure(size_t joints, const Limits& limits, double command_period, double max_extrapolation)
+    {
+        _limits = limits;
+        _command_period = command_period;
+        _max_extrapolation = max_extrapolation;
+        _setpoint.assign(joints, 0.);
+        _velocity.assign(joints, 0.);
+        _acceleration.assign(joints, 0.);
+        _target.assign(joints, 0.);
+        _target_velocity.assign(joints, 0.);
+        _initialized = false;
+        _has_target = false;
+        _extrapolating = false;
+    }
+
+    void SetpointInterpolator::reset(const std::vector<double>& position, double time)
+    {
+        for (size_t j = 0; j < _setpoint.size(); j++) {
+            _setpoint[j] = position[j];
+            _target[j] = position[j];
+        }
+        std::fill(_velocity.begin(), _velocity.end(), 0.);
+        std::fill(_acceleration.begin(), _acceleration.end(), 0.);
+        std::fill(_target_velocity.begin(), _target_velocity.end(), 0.);
+        _target_time = time;
+        _initialized = true;
+        _has_target = false;
+        _extrapolating = false;
+    }
+
+    void SetpointInterpolator::set_target(const std::vector<double>& target, double time)
+    {
+        // the velocity of the targets, to extrapolate when the next one is late
+        double interval = time - _target_time;
+        for (size_t j = 0; j < _target.size(); j++) {
+            _target_velocity[j] = (_has_target && interval > 0.) ? (target[j] - _target[j]) / interval : 0.;
+            _target[j] = target[j];
+        }
+        _target_time = time;
+        _has_target = true;
+    }
+
+    const std::vector<double>& SetpointInterpolator::update(double time, double dt)
+    {
+        if (dt <= 0.)
+            return _setpoint;
+
+        double remaining = _target_time + _command_period - time;
+        _extrapolating = _has_target && remaining < 0.;
+        bool extrapolated = _extrapolating && -remaining < _max_extrapolation;
+
+        // gains of the tracking loops, the velocity loop faster than the position loop
+        double k = std::min(0.5 / _command_period, 1. / (32. * dt));
+        double kp = k, kv = 4. * k;
+
+        for (size_t j = 0; j < _setpoint.size(); j++) {
+            // the reference moves from the previous target to the target within one command period,
+            // then along the extrapolated target for at most max_extrapolation, then stops
+            double reference, feedforward = 0.;
+            if (!_extrapolating) {
+                reference = _target[j] - _target_velocity[j] * std::max(remaining, 0.);
+                feedforward = _target_velocity[j];
+            }
+            else {
+                reference = _target[j] + _target_velocity[j] * std::min(-remaining, _max_extrapolation);
+                feedforward = extrapolated ? _target_velocity[j] : 0.;
+            }
+
+            double velocity = feedforward + kp * (reference - _setpoint[j]);
+            velocity = std::max(-_limits.velocity, std::min(velocity, _limits.velocity));
+
+            // unless the reference moves to the next target, slow enough to stop where it ends
+            if (_extrapolating || feedforward == 0.) {
+                double end = _target[j] + _target_velocity[j] * (_extrapolating ? _max_extrapolation : 0.);
+                double stopping = _stopping_velocity(std::abs(end - _setpoint[j]));
+                if (end >= _setpoint[j])
+                    velocity = std::min(velocity, stopping);
+                else
+                    velocity = std::max(velocity, -stopping);
+                // past the end of the extrapolation while braking: held where it stops, not moved back
+                if (_extrapolating && _target_velocity[j] * (end - _setpoint[j]) < 0.)
+                    velocity = 0.;
+            }
+
+            // acceleration towards it, low enough to ramp down at the jerk limit without passing it
+            double change = velocity - _velocity[j];
+            double ramp = _limits.jerk * (std::sqrt(dt * dt + 2. * std::abs(change) / _limits.jerk) - dt);
+            double acceleration = std::max(-ramp, std::min(kv * change, ramp));
+            acceleration = std::max(-_limits.acceleration, std::min(acceleration, _limits.acceleration));
+            double a = _acceleration[j];
+            a = std::max(a - _limits.jerk * dt, std::min(acceleration, a + _limits.jerk * dt));
+
+            double v = std::max(-_limits.velocity, std::min(_velocity[j] + a * dt, _limits.velocity));
+            _acceleration[j] = (v - _velocity[j]) / dt;
+            _velocity[j] = v;
+            _setpoint[j] += v * dt;
+        }
+
+        return _setpoint;
+    }
+
+    double SetpointInterpolator::_stopping_velocity(double distance) const
+    {
+        // highest velocity from which the setpoint stops within distance: with a trapezoidal
+        // acceleration ramped at the jerk limit, or a triangular one below a^2/j; planned with
+        // half the limits, the rest leaves the loops room to follow the shrinking velocity
+        double a = 0.5 * _limits.acceleration, j = 0.5 * _limits.jerk;
+        double v = -a * a / (2. * j) + std::sqrt(a * a * a * a / (4. * j * j) + 2. * a * distance);
+        if (v < a * a / j)
+            v = std::cbrt(j * distance * distance);
+        return v;
+    }
+} // namespace iiwa_ros
@@ -0,0 +1,215 @@
+//|
+//|    Copyright (C) 2019 Learning Algorithms and Systems Laboratory, EPFL, Switzerland
+//|    Authors:  Konstantinos Chatzilygeroudis (maintainer)
+//|              Bernardo Fichera
+//|              Walid Amanhoud
+//|    email:    costashatz@gmail.com
+//|              bernardo.fichera@epfl.ch
+//|              walid.amanhoud@epfl.ch
+//|    Other contributors:
+//|              Yoan Mollard (yoan@aubrune.eu)
+//|    website:  lasa.epfl.ch
+//|
+//|    This file is part of iiwa_ros.
+//|
+//|    iiwa_ros is free software: you can redistribute it and/or modify
+//|    it under the terms of the GNU General Public License as published by
+//|    the Free Software Foundation, either version 3 of the License, or
+//|    (at your option) any later version.
+//|
+//|    iiwa_ros is distributed in the hope that it will be useful,
+//|    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//|    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//|    GNU General Public License for more details.
+//|
+#include <gtest/gtest.h>
+
+#include <iiwa_driver/setpoint_interpolator.h>
+
+#include <algorithm>
+#include <cmath>
+#include <vector>
+
+using iiwa_ros::SetpointInterpolator;
+
+namespace {
+    const double kDt = 0.001; // FRI cycle [s]
+    const double kCommandPeriod = 0.01; // controllers at 100Hz [s]
+    const double kMaxExtrapolation = 0.02; // [s]
+    const double kTolerance = 1e-6; // relative, for the finite differences
+
+    /// Velocity, acceleration and jerk of the setpoints of a joint, from their finite differences
+    class Recorder {
+    public:
+        Recorder(const SetpointInterpolator& interpolator, size_t joint) : _interpolator(interpolator), _joint(joint) {}
+
+        void record()
+        {
+            double position = _interpolator.setpoint()[_joint];
+            if (_samples > 0) {
+                double velocity = (position - _position) / kDt;
+                if (_samples > 1) {
+                    double acceleration = (velocity - _velocity) / kDt;
+                    if (_samples > 2)
+                        max_jerk = std::max(max_jerk, std::abs(acceleration - _acceleration) / kDt);
+                    max_acceleration = std::max(max_acceleration, std::abs(acceleration));
+                    _acceleration = acceleration;
+                }
+                max_velocity = std::max(max_velocity, std::abs(velocity));
+                _velocity = velocity;
+            }
+            _position = position;
+            _samples++;
+        }
+
+        void expect_within(const SetpointInterpolator::Limits& limits) const
+        {
+            EXPECT_LE(max_velocity, limits.velocity * (1. + kTolerance));
+            EXPECT_LE(max_acceleration, limits.acceleration * (1. + kTolerance));
+            EXPECT_LE(max_jerk, limits.jerk * (1. + kTolerance));
+        }
+
+        double max_velocity = 0., max_acceleration = 0., max_jerk = 0.;
+
+    private:
+        const SetpointInterpolator& _interpolator;
+        size_t _joint;
+        size_t _samples = 0;
+        double _position = 0., _velocity = 0., _acceleration = 0.;
+    };
+
+    SetpointInterpolator make_interpolator(const SetpointInterpolator::Limits& limits, const std::vector<double>& start)
+    {
+        SetpointInterpolator interpolator;
+        interpolator.configure(start.size(), limits, kCommandPeriod, kMaxExtrapolation);
+        interpolator.reset(start, 0.);
+        return interpolator;
+    }
+} // namespace
+
+TEST(SetpointInterpolator, HoldsWithoutTarget)
+{
+    SetpointInterpolator interpolator = make_interpolator(SetpointInterpolator::Limits(), {0.1, -0.2});
+    EXPECT_TRUE(interpolator.initialized());
+    for (int i = 1; i <= 100; i++)
+        interpolator.update(i * kDt, kDt);
+    EXPECT_FALSE(interpolator.extrapolating());
+    EXPECT_DOUBLE_EQ(interpolator.setpoint()[0], 0.1);
+    EXPECT_DOUBLE_EQ(interpolator.setpoint()[1], -0.2);
+}
+
+TEST(SetpointInterpolator, StepRespectsLimits)
+{
+    // a step far beyond what the limits allow within one command period
+    SetpointInterpolator::Limits limits;
+    SetpointInterpolator interpolator = make_interpolator(limits, {0.});
+    Recorder recorder(interpolator, 0);
+    interpolator.set_target({1.}, 0.);
+
+    // the target is commanded again at every command period, as by the controllers
+    for (int i = 1; i <= 3000; i++) {
+        if (i % 10 == 0)
+            interpolator.set_target({1.}, i * kDt);
+        interpolator.update(i * kDt, kDt);
+        recorder.record();
+        EXPECT_LE(interpolator.setpoint()[0], 1. + 1e-6) << "at cycle " << i;
+    }
+
+    recorder.expect_within(limits);
+    EXPECT_NEAR(interpolator.setpoint()[0], 1., 1e-3);
+}
+
+TEST(SetpointInterpolator, RampRespectsLimits)
+{
+    // targets moving faster than the velocity limit, then stopping at once
+    SetpointInterpolator::Limits limits;
+    limits.velocity = 1.;
+    limits.acceleration = 5.;
+    limits.jerk = 200.;
+    SetpointInterpolator interpolator = make_interpolator(limits, {0., 0.});
+    Recorder first(interpolator, 0), second(interpolator, 1);
+
+    double target = 0.;
+    for (int i = 1; i <= 4000; i++) {
+        if (i % 10 == 0) {
+            if (i <= 1000)
+                target += 2. * kCommandPeriod;
+            interpolator.set_target({target, -target}, i * kDt);
+        }
+        interpolator.update(i * kDt, kDt);
+        first.record();
+        second.record();
+    }
+
+    first.expect_within(limits);
+    second.expect_within(limits);
+    EXPECT_NEAR(interpolator.setpoint()[0], target, 1e-3);
+    EXPECT_NEAR(interpolator.setpoint()[1], -target, 1e-3);
+}
+
+TEST(SetpointInterpolator, ExtrapolationStopsAfterCutoff)
+{
+    // targets at 0.5rad/s, then the controllers stop updating
+    SetpointInterpolator::Limits limits;
+    SetpointInterpolator interpolator = make_interpolator(limits, {0.});
+    Recorder recorder(interpolator, 0);
+    const double velocity = 0.5;
+
+    int last = 0;
+    double target = 0.;
+    for (int i = 1; i <= 500; i++) {
+        if (i % 10 == 0) {
+            target = velocity * i * kDt;
+            interpolator.set_target({target}, i * kDt);
+            last = i;
+        }
+        interpolator.update(i * kDt, kDt);
+        recorder.record();
+        EXPECT_FALSE(interpolator.extrapolating()) << "at cycle " << i;
+    }
+
+    // up to the command period of the last target: interpolating
+    int i = last + 1;
+    for (; i <= last + 10; i++) {
+        interpolator.update(i * kDt, kDt);
+        recorder.record();
+        EXPECT_FALSE(interpolator.extrapolating()) << "at cycle " << i;
+    }
+
+    // past it: extrapolated along the last target velocity for max_extrapolation, braking so as to
+    // stop at its end, or within the braking distance from the last target if that is further
+    double end = target + velocity * kMaxExtrapolation;
+    double braking = velocity * velocity / (2. * limits.acceleration) + velocity * limits.acceleration / (2. * limits.jerk);
+    double bound = std::max(end, target + braking);
+    double previous = interpolator.setpoint()[0];
+    for (; i <= 1500; i++) {
+        interpolator.update(i * kDt, kDt);
+        recorder.record();
+        EXPECT_TRUE(interpolator.extrapolating()) << "at cycle " << i;
+        EXPECT_LE(interpolator.setpoint()[0], bound + 1e-4) << "at cycle " << i;
+        // not moved back against the extrapolation
+        EXPECT_GE(interpolator.setpoint()[0], previous - 1e-12) << "at cycle " << i;
+        previous = interpolator.setpoint()[0];
+    }
+    EXPECT_GE(interpolator.setpoint()[0], end - 1e-3);
+
+    // then held, within the limits
+    double held = interpolator.setpoint()[0];
+    for (; i <= 1600; i++) {
+        interpolator.update(i * kDt, kDt);
+        recorder.record();
+    }
+    EXPECT_NEAR(interpolator.setpoint()[0], held, 1e-9);
+    recorder.expect_within(limits);
+
+    // a new target ends the extrapolation
+    interpolator.set_target({held}, i * kDt);
+    interpolator.update((i + 1) * kDt, kDt);
+    EXPECT_FALSE(interpolator.extrapolating());
+}
+
+int main(int argc, char** argv)
+{
+    testing::InitGoogleTest(&argc, argv);
+    return RUN_ALL_TESTS();
+}